@@ -0,0 +1,364 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dsatool.util.ErrorLogger;
+import dsatool.util.Util;
+import jsonant.event.ParseListener;
+import jsonant.parse.JSONParser;
+import jsonant.print.JSONPrinter;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+
+/**
+ * Benchmarks for loading, merging and saving resources
+ *
+ * Each trial generates a synthetic application directory with data and mod trees and a group zip file of the requested
+ * scale. Since the application directory is resolved only once per JVM, every parameter combination has to run in its
+ * own fork. Run with "ant benchmark", the results are written as JSON to benchmark/results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceManagerBenchmark {
+
+	/**
+	 * Discards all loaded resources before each invocation, so they have to be read again
+	 */
+	@State(Scope.Thread)
+	public static class Cold {
+		@Setup(Level.Invocation)
+		public void discard(final Group group) {
+			ResourceManager.discardChanges();
+			ResourceManager.discardBaseLayers();
+		}
+	}
+
+	/**
+	 * Creates a new character in the group zip file before each invocation
+	 */
+	@State(Scope.Thread)
+	public static class Created {
+		JSONObject resource;
+
+		@Setup(Level.Invocation)
+		public void create(final Group group) {
+			ResourceManager.runTransaction(() -> resource = ResourceManager.getNewResource(CHARACTERS + "Neu"));
+		}
+	}
+
+	/**
+	 * Changes some characters before each invocation and reports the changes like the user interface does, so they have to
+	 * be saved
+	 */
+	@State(Scope.Thread)
+	public static class Dirty {
+		long counter;
+
+		@Setup(Level.Invocation)
+		public void change(final Group group) {
+			for (int i = 0; i < group.resources; i += 10) {
+				final JSONObject biography = ResourceManager.getResource(CHARACTERS + "Held_" + i).getObj("Biografie");
+				biography.put("Abenteuerpunkte", ++counter);
+				biography.notifyListeners(null);
+			}
+		}
+	}
+
+	/**
+	 * The generated application directory and group
+	 */
+	@State(Scope.Benchmark)
+	public static class Group {
+		/**
+		 * The number of characters in the group and of data files
+		 */
+		@Param({ "10", "100", "500" })
+		public int resources;
+
+		/**
+		 * The number of entries in each category of a character and in each data file
+		 */
+		@Param({ "20", "200" })
+		public int entries;
+
+		Path appDir;
+
+		byte[] general;
+
+		byte[] modification;
+
+		@Setup(Level.Trial)
+		public void generate() throws IOException {
+			appDir = Files.createTempDirectory("dsatool-benchmark");
+			System.setProperty("dsatool.appDir", appDir.toString());
+			if (!appDir.toFile().getCanonicalPath().equals(Util.getAppDir()))
+				throw new IllegalStateException("Each parameter combination has to run in its own fork");
+
+			Files.createDirectories(appDir.resolve("settings"));
+			Files.createDirectories(appDir.resolve(DATA));
+			Files.createDirectories(appDir.resolve("mod").resolve(DATA));
+			general = generateData(entries).getBytes(StandardCharsets.UTF_8);
+			modification = generateModification(entries).getBytes(StandardCharsets.UTF_8);
+			for (int i = 0; i < resources; ++i) {
+				Files.write(appDir.resolve(DATA + "Daten_" + i + ".json"), general);
+				if (i % 2 == 0) {
+					Files.write(appDir.resolve("mod").resolve(DATA + "Daten_" + i + ".json"), modification);
+				}
+			}
+
+			final File zip = appDir.resolve("Gruppe.zip").toFile();
+			try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()));
+					BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+				for (int i = 0; i < resources; ++i) {
+					out.putNextEntry(new ZipEntry(CHARACTERS + "Held_" + i + ".json"));
+					JSONPrinter.print(writer, generateCharacter(i, entries));
+					writer.flush();
+					out.closeEntry();
+				}
+			}
+
+			ResourceManager.setDiscriminatingAttribute(DISCRIMINATING_ATTRIBUTE);
+			ResourceManager.setPriorities(PRIORITIES);
+			ResourceManager.setZipFile(zip);
+		}
+
+		@TearDown(Level.Trial)
+		public void delete() throws IOException {
+			ResourceManager.discardChanges();
+			try (Stream<Path> tree = Files.walk(appDir)) {
+				for (final Path current : (Iterable<Path>) tree.sorted(Comparator.reverseOrder())::iterator) {
+					Files.delete(current);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A freshly parsed resource and modification for each invocation, since merging changes the resource
+	 */
+	@State(Scope.Thread)
+	public static class Merge {
+		JSONObject resource;
+
+		JSONObject modification;
+
+		@Setup(Level.Invocation)
+		public void parse(final Group group) throws IOException {
+			resource = ResourceManagerBenchmark.parse(group.general, null);
+			modification = ResourceManagerBenchmark.parse(group.modification, null);
+		}
+	}
+
+	/**
+	 * A character that is moved back and forth
+	 */
+	@State(Scope.Thread)
+	public static class Moved {
+		JSONObject resource;
+
+		int counter;
+
+		@Setup(Level.Trial)
+		public void load(final Group group) {
+			resource = ResourceManager.getResource(CHARACTERS + "Held_0");
+		}
+	}
+
+	private static final String CHARACTERS = "characters/";
+
+	private static final String DATA = "data/Benchmark/";
+
+	private static final String DISCRIMINATING_ATTRIBUTE = "Regelwerke";
+
+	private static final List<String> PRIORITIES = List.of("WdS", "WdH", "WdA");
+
+	/**
+	 * Creates a character as it could have been created by the application
+	 *
+	 * @param index
+	 *            The number of the character
+	 * @param entries
+	 *            The number of entries in each category
+	 * @return The character
+	 */
+	private static JSONObject generateCharacter(final int index, final int entries) {
+		final JSONObject character = new JSONObject(null);
+		final JSONObject bio = new JSONObject(character);
+		bio.put("Vorname", "Held " + index);
+		bio.put("Rasse", "Mittelländer");
+		bio.put("Abenteuerpunkte", 1000L * index);
+		character.put("Biografie", bio);
+		for (final String category : List.of("Talente", "Zauber", "Sonderfertigkeiten")) {
+			final JSONObject values = new JSONObject(character);
+			for (int i = 0; i < entries; ++i) {
+				final JSONObject value = new JSONObject(values);
+				value.put("TaW", (long) (i % 18));
+				value.put("SE", i % 7 == 0);
+				values.put(category + " " + i, value);
+			}
+			character.put(category, values);
+		}
+		final JSONArray history = new JSONArray(character);
+		for (int i = 0; i < entries; ++i) {
+			final JSONObject event = new JSONObject(history);
+			event.put("Typ", "Talent");
+			event.put("Talent", "Talente " + i);
+			event.put("AP", (long) (i * 5));
+			history.add(event);
+		}
+		character.put("Historie", history);
+		return character;
+	}
+
+	/**
+	 * Creates the text of a data file, in which each entry exists once per rulebook, so the discriminator has to
+	 * choose between them
+	 *
+	 * @param entries
+	 *            The number of distinct entries
+	 * @return The content of the file
+	 */
+	private static String generateData(final int entries) {
+		final StringBuilder json = new StringBuilder("{\n");
+		for (int i = 0; i < entries; ++i) {
+			for (final String rulebook : PRIORITIES) {
+				json.append("\t\"Eintrag ").append(i).append("\": {\n");
+				json.append("\t\t\"Beschreibung\": \"Eintrag ").append(i).append(" aus ").append(rulebook).append("\",\n");
+				json.append("\t\t\"Kosten\": ").append(i % 11).append(",\n");
+				json.append("\t\t\"Voraussetzungen\": [\"Eintrag ").append(Math.max(i - 1, 0)).append("\"],\n");
+				json.append("\t\t\"").append(DISCRIMINATING_ATTRIBUTE).append("\": {\"").append(rulebook).append("\": {}}\n");
+				json.append("\t},\n");
+			}
+		}
+		json.append("\t\"Anzahl\": ").append(entries).append("\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Creates the text of a mod file, which changes every tenth entry and removes every hundredth
+	 *
+	 * @param entries
+	 *            The number of distinct entries in the data file
+	 * @return The content of the file
+	 */
+	private static String generateModification(final int entries) {
+		final StringBuilder json = new StringBuilder("{\n");
+		for (int i = 0; i < entries; i += 10) {
+			if (i % 100 == 0) {
+				json.append("\t\"Eintrag ").append(i).append("\": null,\n");
+			} else {
+				json.append("\t\"Eintrag ").append(i).append("\": {\"Kosten\": 0, \"Hausregel\": true},\n");
+			}
+		}
+		json.append("\t\"Mod\": true\n}\n");
+		return json.toString();
+	}
+
+	private static JSONObject parse(final byte[] content, final ParseListener listener) throws IOException {
+		return new JSONParser(listener, ErrorLogger::logError)
+				.parse(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)));
+	}
+
+	@Benchmark
+	public boolean deleteResource(final Created created) {
+		return ResourceManager.deleteResource(created.resource);
+	}
+
+	@Benchmark
+	public JSONObject discriminatorParse(final Group group) throws IOException {
+		return parse(group.general, ResourceManager.discriminator);
+	}
+
+	@Benchmark
+	public List<JSONObject> getAllResourcesCold(final Cold cold) {
+		return ResourceManager.getAllResources(CHARACTERS);
+	}
+
+	@Benchmark
+	public List<JSONObject> getAllResourcesWarm(final Group group) {
+		return ResourceManager.getAllResources(CHARACTERS);
+	}
+
+	@Benchmark
+	public JSONObject getCharacterCold(final Group group, final Cold cold) {
+		return ResourceManager.getResource(CHARACTERS + "Held_" + group.resources / 2);
+	}
+
+	@Benchmark
+	public JSONObject getCharacterWarm(final Group group) {
+		return ResourceManager.getResource(CHARACTERS + "Held_" + group.resources / 2);
+	}
+
+	@Benchmark
+	public JSONObject getDataCold(final Group group, final Cold cold) {
+		return ResourceManager.getResource(DATA + "Daten_" + group.resources / 2);
+	}
+
+	@Benchmark
+	public JSONObject getDataWarm(final Group group) {
+		return ResourceManager.getResource(DATA + "Daten_" + group.resources / 2);
+	}
+
+	@Benchmark
+	public JSONObject modifyResource(final Merge merge) {
+		ResourceManager.modifyResource(merge.resource, merge.modification);
+		return merge.resource;
+	}
+
+	@Benchmark
+	public void moveResource(final Moved moved) {
+		ResourceManager.moveResource(moved.resource, CHARACTERS + (moved.counter++ % 2 == 0 ? "Verschoben" : "Held_0"));
+	}
+
+	@Benchmark
+	public void saveResources(final Dirty dirty) {
+		ResourceManager.saveResources();
+	}
+}
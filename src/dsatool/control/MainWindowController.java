@@ -20,6 +20,7 @@ import java.util.Optional;
 import org.controlsfx.control.StatusBar;
 
 import dsatool.credits.CreditsDialog;
+import dsatool.diagnostics.DiagnosticsDialog;
 import dsatool.gui.ThemedAlert;
 import dsatool.resources.GroupFileManager;
 import dsatool.resources.ResourceManager;
@@ -142,6 +143,16 @@ public class MainWindowController {
 				GroupFileManager.openNewGroup();
 			}
 		});
+		file.addItem("Neu als Ordner").setAction(_ -> {
+			if (askSaveChanges()) {
+				GroupFileManager.createNewGroupDirectory();
+			}
+		});
+		file.addItem("Ordner laden").setAction(_ -> {
+			if (askSaveChanges()) {
+				GroupFileManager.openGroupDirectory();
+			}
+		});
 		file.addItem("Speichern").setAction(_ -> {
 			ResourceManager.saveResources();
 		});
@@ -165,6 +176,9 @@ public class MainWindowController {
 		help.addItem("Nach Updates suchen").setAction(_ -> {
 			new Thread(() -> new Update().searchUpdates(true)).start();
 		});
+		help.addItem("Diagnose").setAction(_ -> {
+			new DiagnosticsDialog(window);
+		});
 		help.addItem("Über DSATool").setAction(_ -> {
 			new CreditsDialog(window);
 		});
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.diagnostics;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import dsatool.gui.GUIUtil;
+import dsatool.resources.ResourceMetrics;
+import dsatool.util.ErrorLogger;
+import dsatool.util.Tuple;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+/**
+ * Shows the metrics collected about loading and saving resources
+ */
+public class DiagnosticsDialog {
+	@FXML
+	private Parent pane;
+	@FXML
+	private TableView<Tuple<String, String>> table;
+	@FXML
+	private TableColumn<Tuple<String, String>, String> nameColumn;
+	@FXML
+	private TableColumn<Tuple<String, String>, String> valueColumn;
+
+	private final Stage stage;
+
+	public DiagnosticsDialog(final Window window) {
+		final FXMLLoader fxmlLoader = new FXMLLoader();
+
+		fxmlLoader.setController(this);
+
+		try {
+			fxmlLoader.load(getClass().getResource("DiagnosticsDialog.fxml").openStream());
+		} catch (final Exception e) {
+			ErrorLogger.logError(e);
+		}
+
+		stage = GUIUtil.setupStage(pane, 600, 500, "Diagnose", window, false);
+
+		nameColumn.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue()._1));
+		valueColumn.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue()._2));
+
+		refresh();
+
+		stage.show();
+	}
+
+	private void add(final String name, final String value) {
+		table.getItems().add(new Tuple<>(name, value));
+	}
+
+	private void addAll(final String name, final Map<String, Long> values, final String unit) {
+		for (final Entry<String, Long> value : values.entrySet()) {
+			add(name + " (" + value.getKey() + ")", value.getValue() + unit);
+		}
+	}
+
+	@FXML
+	public void close() {
+		stage.close();
+	}
+
+	@FXML
+	public void refresh() {
+		final ResourceMetrics metrics = ResourceMetrics.getInstance();
+		table.getItems().clear();
+		addAll("Geladene Ressourcen", metrics.getAcquireCounts(), "");
+		addAll("Gelesene Daten", metrics.getBytesRead(), " Bytes");
+		addAll("Parsen", metrics.getParseTimes(), " ms");
+		addAll("Bereinigung", metrics.getSanitizerTimes(), " ms");
+		final Map<String, Long> listenerTimes = metrics.getPathListenerTimes();
+		for (final Entry<String, Long> calls : metrics.getPathListenerCalls().entrySet()) {
+			add("Pfad-Listener (" + calls.getKey() + ")", calls.getValue() + " Aufrufe, " + listenerTimes.getOrDefault(calls.getKey(), 0L) + " ms");
+		}
+		add("Speichervorgänge", Long.toString(metrics.getSaveCount()));
+		add("Serialisieren", metrics.getSerializeTime() + " ms");
+		add("Serialisieren für das Wiederherstellungsprotokoll", metrics.getJournalTime() + " ms");
+		add("Komprimieren", metrics.getCompressTime() + " ms");
+		add("Schreiben", metrics.getWriteTime() + " ms");
+		add("Warten auf das Gruppenarchiv", metrics.getZipLockWaitCount() + " mal, " + metrics.getZipLockWaitTime() + " ms");
+	}
+
+	@FXML
+	public void reset() {
+		ResourceMetrics.getInstance().reset();
+		refresh();
+	}
+}
@@ -29,9 +29,13 @@ import org.controlsfx.control.StatusBar;
 import dsatool.control.MainWindowController;
 import dsatool.plugins.Plugin;
 import dsatool.plugins.PluginLoader;
+import dsatool.resources.AutoSave;
 import dsatool.resources.GroupFileManager;
+import dsatool.resources.ResourceMetrics;
+import dsatool.resources.ResourceWatcher;
 import dsatool.resources.Settings;
 import dsatool.settings.BooleanSetting;
+import dsatool.settings.IntegerSetting;
 import dsatool.settings.StringChoiceSetting;
 import dsatool.ui.DetachableNode;
 import dsatool.ui.DetachedNode;
@@ -143,6 +147,19 @@ public class Main extends Application {
 
 		Settings.addSetting(new BooleanSetting("Java-Update-Hinweis", true, "Allgemein", "Java-Update-Hinweis"));
 
+		Settings.addSetting(new IntegerSetting("Automatisch speichern (Minuten, 0 = aus)", 0, 0, 120, "Allgemein", "Automatisch speichern"));
+		AutoSave.start();
+
+		ResourceMetrics.register();
+
+		Settings.addSetting(new IntegerSetting("Speicherbudget für Gruppendaten (MB, 0 = unbegrenzt)", 0, 0, 16384, "Allgemein", "Speicherbudget"));
+		Settings.addSetting(new BooleanSetting("Änderungen an Gruppen protokollieren statt neu zu packen", false, "Allgemein", "Änderungsprotokoll"));
+
+		Settings.addSetting(new BooleanSetting("Geänderte Datendateien neu laden", false, "Allgemein", "Dateien überwachen"));
+		if (Settings.getSettingBoolOrDefault(false, "Allgemein", "Dateien überwachen")) {
+			ResourceWatcher.start();
+		}
+
 		Settings.addSetting(new StringChoiceSetting("Thema", "Stein",
 				List.of("Stein", "Marmor", "Pergament", "Holz", "Anthrazit", "Mine", "Gift", "Wald", "Gras", "Meer", "Himmel"), "Allgemein", "Thema"));
 
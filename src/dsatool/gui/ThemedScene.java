@@ -113,7 +113,7 @@ public class ThemedScene extends Scene {
 					}
 				};
 				final JSONObject settings = ResourceManager.getResource("settings/Einstellungen").getObj("Allgemein");
-				settings.addListener(listener);
+				ResourceManager.addListener(settings, listener);
 			}
 		}
 
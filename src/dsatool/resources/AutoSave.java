@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import dsatool.util.ErrorLogger;
+
+/**
+ * Saves changes to the current group in the background
+ *
+ * Once no more changes were reported for a moment, changed resources are appended to the recovery journal of the group.
+ * The group archive itself is only rewritten in the interval configured in the settings, so bursts of changes result in a
+ * single save. The changed resources are serialized on the JavaFX application thread, so they cannot be changed while
+ * a snapshot of them is taken.
+ */
+public class AutoSave {
+
+	/**
+	 * The interval in seconds in which the changes are checked
+	 */
+	private static final int CHECK_INTERVAL = 5;
+
+	/**
+	 * The time in milliseconds without changes after which the user is considered to be idle
+	 */
+	private static final int IDLE_TIME = 2000;
+
+	private static ScheduledExecutorService executor;
+
+	private static long lastSave = System.currentTimeMillis();
+
+	/**
+	 * Checks for unsaved changes and journals or saves them if the user is idle
+	 */
+	private static void check() {
+		try {
+			final long now = System.currentTimeMillis();
+			if (now - ResourceManager.getLastChange() < IDLE_TIME || !ResourceManager.hasChanges()) return;
+			final int interval = Settings.getSettingIntOrDefault(0, "Allgemein", "Automatisch speichern");
+			if (interval > 0 && now - lastSave >= interval * 60000L) {
+				lastSave = now;
+				ResourceManager.saveResources();
+			} else {
+				ResourceManager.journalChanges();
+			}
+		} catch (final RuntimeException e) {
+			ErrorLogger.logError(e);
+		}
+	}
+
+	/**
+	 * Starts saving changes in the background
+	 */
+	public static synchronized void start() {
+		if (executor != null) return;
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "DSATool-AutoSave");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(AutoSave::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops saving changes in the background
+	 */
+	public static synchronized void stop() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	private AutoSave() {}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import dsatool.resources.ResourceManager.Source;
+import jsonant.value.JSONObject;
+
+/**
+ * The merged general and mod layers of a resource, as they were before the group layer was applied
+ *
+ * The resource must never be handed out or modified, it is only used as a template for copies.
+ */
+final class BaseLayer {
+
+	/**
+	 * Creates the key for a base layer
+	 *
+	 * @param files
+	 *            The files the base layer is merged from, files that do not exist are null
+	 * @param discriminatingAttribute
+	 *            The discriminating attribute the files are parsed with or null, if they are parsed without
+	 * @param priorities
+	 *            The priorities of the discriminating attribute
+	 * @return A key that changes whenever any of the files or the parse settings change
+	 */
+	static byte[] key(final List<FileIndex.Stat> files, final String discriminatingAttribute, final Collection<String> priorities) {
+		final ByteArrayOutputStream key = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(key)) {
+			out.writeUTF(discriminatingAttribute == null ? "" : discriminatingAttribute);
+			out.writeInt(priorities.size());
+			for (final String priority : priorities) {
+				out.writeUTF(priority);
+			}
+			for (final FileIndex.Stat file : files) {
+				out.writeBoolean(file != null);
+				if (file != null) {
+					out.writeLong(file.size);
+					out.writeLong(file.lastModified);
+				}
+			}
+		} catch (final IOException e) {
+			// Can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return key.toByteArray();
+	}
+
+	/**
+	 * The key describing the files and settings the base layer was created from
+	 */
+	final byte[] key;
+
+	/**
+	 * The merged content of the layers
+	 */
+	final JSONObject resource;
+
+	/**
+	 * The topmost layer that exists
+	 */
+	final Source source;
+
+	/**
+	 * The CRC-32 of the topmost layer
+	 */
+	final long crc;
+
+	/**
+	 * The size of the topmost layer in bytes
+	 */
+	final long size;
+
+	BaseLayer(final byte[] key, final JSONObject resource, final Source source, final long crc, final long size) {
+		this.key = key;
+		this.resource = resource;
+		this.source = source;
+		this.crc = crc;
+		this.size = size;
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+import jsonant.value.JSONValue;
+
+/**
+ * The backing map of a JSONObject that copies the nested values of another JSONObject when they are first accessed
+ *
+ * The map starts as a shallow copy of the keys and primitive values of the shared object. Nested objects and arrays are
+ * copied when they are accessed for the first time, by reading or by changing them, as lazy copies themselves, so
+ * subtrees that are never touched stay shared. Reads have to copy as well, because jsonant hands out the nested values
+ * themselves, which may then be changed. Every method of the map that hands out or compares values copies them first,
+ * so the placeholders for shared values never leave it. The shared object must not be modified afterwards.
+ */
+final class CopyOnAccessMap extends LinkedHashMap<String, Object> {
+
+	/**
+	 * A nested value of the shared object that was not accessed yet
+	 */
+	private static class Shared {
+		private final JSONValue value;
+
+		private Shared(final JSONValue value) {
+			this.value = value;
+		}
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates an array that shares the nested objects of another array until they are accessed
+	 *
+	 * The elements themselves are copied right away. This only happens when the array is accessed for the first time, and
+	 * arrays are usually iterated as a whole then, while nested objects and arrays in it stay shared as lazy copies. jsonant
+	 * reads the backing list of an array directly, so sharing the elements would require a list that resolves them on every
+	 * access.
+	 *
+	 * @param shared
+	 *            The array to share the nested objects of, which must not be modified afterwards
+	 * @param parent
+	 *            The parent of the new array
+	 * @return An array with the same content as the shared array
+	 */
+	static JSONArray copy(final JSONArray shared, final JSONValue parent) {
+		final int size = shared.size();
+		final List<Object> values = new ArrayList<>(size);
+		final JSONArray result = new JSONArray(values, parent);
+		for (int i = 0; i < size; ++i) {
+			final Object value = shared.getUnsafe(i);
+			if (value instanceof final JSONObject obj) {
+				values.add(copy(obj, result));
+			} else if (value instanceof final JSONArray arr) {
+				values.add(copy(arr, result));
+			} else {
+				values.add(value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates an object that shares the content of another object until it is accessed
+	 *
+	 * @param shared
+	 *            The object to share the content of, which must not be modified afterwards
+	 * @param parent
+	 *            The parent of the new object
+	 * @return An object with the same content and discriminating attributes as the shared object
+	 */
+	static JSONObject copy(final JSONObject shared, final JSONValue parent) {
+		final CopyOnAccessMap values = new CopyOnAccessMap(shared);
+		final JSONObject result = new JSONObject(values, parent);
+		values.owner = result;
+		ResourceManager.copyDiscrimination(shared, result);
+		return result;
+	}
+
+	/**
+	 * The object this map belongs to, which is the parent of all copied nested values
+	 */
+	private transient JSONObject owner;
+
+	private CopyOnAccessMap(final JSONObject shared) {
+		super((int) (shared.size() / 0.75f) + 1);
+		for (final String key : shared.keySet()) {
+			final Object value = shared.getUnsafe(key);
+			super.put(key, value instanceof final JSONValue nested ? new Shared(nested) : value);
+		}
+	}
+
+	@Override
+	public Object compute(final String key, final BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+		get(key);
+		return super.compute(key, remappingFunction);
+	}
+
+	@Override
+	public Object computeIfAbsent(final String key, final Function<? super String, ? extends Object> mappingFunction) {
+		get(key);
+		return super.computeIfAbsent(key, mappingFunction);
+	}
+
+	@Override
+	public Object computeIfPresent(final String key, final BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+		get(key);
+		return super.computeIfPresent(key, remappingFunction);
+	}
+
+	@Override
+	public boolean containsValue(final Object value) {
+		resolveAll();
+		return super.containsValue(value);
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		resolveAll();
+		return super.entrySet();
+	}
+
+	@Override
+	public void forEach(final BiConsumer<? super String, ? super Object> action) {
+		resolveAll();
+		super.forEach(action);
+	}
+
+	@Override
+	public Object get(final Object key) {
+		final Object value = super.get(key);
+		return value instanceof Shared ? resolve(key) : value;
+	}
+
+	@Override
+	public Object getOrDefault(final Object key, final Object defaultValue) {
+		final Object value = super.getOrDefault(key, defaultValue);
+		return value instanceof Shared ? resolve(key) : value;
+	}
+
+	@Override
+	public Object merge(final String key, final Object value, final BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+		get(key);
+		return super.merge(key, value, remappingFunction);
+	}
+
+	@Override
+	public Object put(final String key, final Object value) {
+		get(key);
+		return super.put(key, value);
+	}
+
+	@Override
+	public Object putIfAbsent(final String key, final Object value) {
+		get(key);
+		return super.putIfAbsent(key, value);
+	}
+
+	@Override
+	public Object remove(final Object key) {
+		get(key);
+		return super.remove(key);
+	}
+
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		get(key);
+		return super.remove(key, value);
+	}
+
+	@Override
+	public Object replace(final String key, final Object value) {
+		get(key);
+		return super.replace(key, value);
+	}
+
+	@Override
+	public boolean replace(final String key, final Object oldValue, final Object newValue) {
+		get(key);
+		return super.replace(key, oldValue, newValue);
+	}
+
+	@Override
+	public void replaceAll(final BiFunction<? super String, ? super Object, ? extends Object> function) {
+		resolveAll();
+		super.replaceAll(function);
+	}
+
+	/**
+	 * Replaces a shared nested value with a lazy copy of it
+	 *
+	 * Reads of jsonant values are expected to be thread-safe, so this has to be synchronized.
+	 *
+	 * @param key
+	 *            The key of the nested value
+	 * @return The copy
+	 */
+	private synchronized Object resolve(final Object key) {
+		final Object value = super.get(key);
+		if (!(value instanceof final Shared shared)) return value;
+		final Object result;
+		if (shared.value instanceof final JSONObject obj) {
+			result = copy(obj, owner);
+		} else {
+			result = copy((JSONArray) shared.value, owner);
+		}
+		super.put((String) key, result);
+		return result;
+	}
+
+	private synchronized void resolveAll() {
+		for (final String key : keySet()) {
+			if (super.get(key) instanceof Shared) {
+				resolve(key);
+			}
+		}
+	}
+
+	@Override
+	public Collection<Object> values() {
+		resolveAll();
+		return super.values();
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import dsatool.util.ErrorLogger;
+
+/**
+ * Stores a group as plain files in a directory
+ *
+ * Saving only writes the files of the changed resources. All files of a batch are first written to temporary files next
+ * to them, which then replace them one by one with atomic renames. If writing fails, the directory is left unchanged.
+ * A batch is not atomic as a whole though: if the application crashes or a rename fails while the files are replaced,
+ * some files of the batch are already replaced and others are not. Rolling back a transaction cannot undo this, the
+ * recovery journal only covers unsaved changes.
+ */
+final class DirectoryGroupStorage implements GroupStorage {
+
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	/**
+	 * Matches the names of the temporary files created while writing, e.g. "Alrik.json.123456789.tmp"
+	 */
+	private static final Pattern TEMPORARY_NAME = Pattern.compile(".+\\.json\\.\\d+\\.tmp");
+
+	/**
+	 * The depth of the directories below the group directory that can contain resources, e.g. "characters/Alrik.json"
+	 */
+	private static final int RESOURCE_DEPTH = 2;
+
+	private static boolean isTemporary(final Path file) {
+		return TEMPORARY_NAME.matcher(file.getFileName().toString()).matches();
+	}
+
+	private final Path root;
+
+	/**
+	 * Opens a directory and removes temporary files left in it by interrupted writes
+	 *
+	 * Only files named like the temporary files of this class are removed, and only where resources are stored, so
+	 * unrelated files are kept if a directory that is not a group is opened.
+	 *
+	 * @param root
+	 *            The directory containing the files of the group
+	 */
+	DirectoryGroupStorage(final Path root) {
+		this.root = root.toAbsolutePath().normalize();
+		try (Stream<Path> tree = Files.walk(this.root, RESOURCE_DEPTH)) {
+			for (final Path current : (Iterable<Path>) tree.filter(file -> Files.isRegularFile(file) && isTemporary(file))::iterator) {
+				Files.deleteIfExists(current);
+			}
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+		}
+	}
+
+	/**
+	 * Lists the children of a directory without temporary files
+	 *
+	 * @param directory
+	 *            The directory to list
+	 * @return The children and their attributes, ordered by name
+	 * @throws IOException
+	 *             If the directory could not be listed
+	 */
+	private List<Entry<Path, BasicFileAttributes>> children(final Path directory) throws IOException {
+		final List<Entry<Path, BasicFileAttributes>> result = new ArrayList<>();
+		try (Stream<Path> children = Files.list(directory)) {
+			for (final Path child : (Iterable<Path>) children::iterator) {
+				if (!isTemporary(child)) {
+					result.add(Map.entry(child, Files.readAttributes(child, BasicFileAttributes.class)));
+				}
+			}
+		}
+		result.sort(Comparator.comparing(child -> child.getKey().getFileName().toString()));
+		return result;
+	}
+
+	@Override
+	public void close() {}
+
+	@Override
+	public void forEachFile(final String path, final Consumer<ResourceInfo> action) {
+		try {
+			final Path directory = resolve(path);
+			if (!directory.equals(root) && Files.isDirectory(directory)) {
+				forEachFile(directory, action);
+			}
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+		}
+	}
+
+	private void forEachFile(final Path directory, final Consumer<ResourceInfo> action) throws IOException {
+		for (final Entry<Path, BasicFileAttributes> child : children(directory)) {
+			if (child.getValue().isDirectory()) {
+				forEachFile(child.getKey(), action);
+			} else if (child.getValue().isRegularFile() && child.getKey().getFileName().toString().endsWith(".json")) {
+				action.accept(info(child.getKey(), child.getValue()));
+			}
+		}
+	}
+
+	@Override
+	public ResourceInfo getInfo(final String name) {
+		try {
+			final Path file = resolve(name);
+			final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return attributes.isRegularFile() ? info(file, attributes) : null;
+		} catch (final NoSuchFileException e) {
+			return null;
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+			return null;
+		}
+	}
+
+	@Override
+	public Path getLocation() {
+		return root;
+	}
+
+	/**
+	 * Describes a file
+	 *
+	 * The checksum is unknown, since it would require reading the file.
+	 *
+	 * @param file
+	 *            The file
+	 * @param attributes
+	 *            The attributes of the file
+	 * @return The description of the file
+	 */
+	private ResourceInfo info(final Path file, final BasicFileAttributes attributes) {
+		final String name = toName(file);
+		final String path = name.endsWith(".json") ? name.substring(0, name.length() - 5) : name;
+		return new ResourceInfo(path, file.getFileName().toString(), attributes.size(), -1, false);
+	}
+
+	@Override
+	public List<ResourceInfo> list(final String path) {
+		try {
+			final Path directory = resolve(path);
+			if (!Files.isDirectory(directory)) return List.of();
+			final String prefix = directory.equals(root) ? "" : toName(directory) + "/";
+			final List<ResourceInfo> result = new ArrayList<>();
+			for (final Entry<Path, BasicFileAttributes> child : children(directory)) {
+				final String name = child.getKey().getFileName().toString();
+				if (child.getValue().isDirectory()) {
+					result.add(new ResourceInfo(prefix + name + "/", name, -1, -1, true));
+				} else if (child.getValue().isRegularFile()) {
+					result.add(info(child.getKey(), child.getValue()));
+				}
+			}
+			return result;
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+			return List.of();
+		}
+	}
+
+	@Override
+	public byte[] read(final String name) throws IOException {
+		try {
+			return Files.readAllBytes(resolve(name));
+		} catch (final NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void rename(final String name, final String newName) throws IOException {
+		final Path target = resolve(newName);
+		Files.createDirectories(target.getParent());
+		GroupArchiveWriter.replace(resolve(name), target);
+	}
+
+	/**
+	 * Resolves the name of an entry against the directory of the group
+	 *
+	 * @param name
+	 *            The name of the entry
+	 * @return The path of the entry
+	 * @throws IOException
+	 *             If the name points outside of the directory of the group
+	 */
+	private Path resolve(final String name) throws IOException {
+		final Path file = root.resolve(name).normalize();
+		if (!file.startsWith(root)) throw new IOException("invalid entry name " + name);
+		return file;
+	}
+
+	private String toName(final Path file) {
+		return root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+	}
+
+	/**
+	 * Writes all files of the batch to temporary files before replacing any of them, so a failed write leaves the
+	 * directory unchanged
+	 */
+	@Override
+	public void write(final Map<String, byte[]> changes) throws IOException {
+		if (changes.isEmpty()) return;
+		final long start = System.nanoTime();
+		final Map<Path, Path> written = new LinkedHashMap<>();
+		try {
+			for (final Entry<String, byte[]> change : changes.entrySet()) {
+				final Path file = resolve(change.getKey());
+				if (change.getValue() == null) {
+					written.put(file, null);
+					continue;
+				}
+				Files.createDirectories(file.getParent());
+				final Path temporary = Files.createTempFile(file.getParent(), file.getFileName() + ".", TEMPORARY_SUFFIX);
+				written.put(file, temporary);
+				try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					final ByteBuffer content = ByteBuffer.wrap(change.getValue());
+					while (content.hasRemaining()) {
+						out.write(content);
+					}
+					out.force(true);
+				}
+			}
+			for (final Iterator<Entry<Path, Path>> iterator = written.entrySet().iterator(); iterator.hasNext();) {
+				final Entry<Path, Path> file = iterator.next();
+				if (file.getValue() == null) {
+					Files.deleteIfExists(file.getKey());
+				} else {
+					GroupArchiveWriter.replace(file.getValue(), file.getKey());
+				}
+				iterator.remove();
+			}
+		} catch (final IOException | RuntimeException e) {
+			for (final Path temporary : written.values()) {
+				if (temporary != null) {
+					try {
+						Files.deleteIfExists(temporary);
+					} catch (final IOException e1) {
+						e.addSuppressed(e1);
+					}
+				}
+			}
+			throw e;
+		} finally {
+			ResourceMetrics.written(System.nanoTime() - start);
+			ResourceMetrics.saved();
+		}
+	}
+}
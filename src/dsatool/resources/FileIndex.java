@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dsatool.util.ErrorLogger;
+
+/**
+ * An index of the files in some directories of the application directory
+ *
+ * The directories are scanned when the index is first used, afterwards all lookups are served from memory. Files that
+ * are changed by the application or reported by the {@link ResourceWatcher} have to be refreshed explicitly. The index
+ * is invalidated if the watcher lost events or a directory was created, and when changes are discarded while the
+ * watcher is not running.
+ */
+final class FileIndex {
+
+	/**
+	 * The attributes of an indexed file
+	 */
+	static final class Stat {
+		/**
+		 * The path of the file relative to the root of the index, separated by slashes
+		 */
+		final String name;
+
+		/**
+		 * The resolved path of the file
+		 */
+		final Path file;
+
+		/**
+		 * The size of the file in bytes
+		 */
+		final long size;
+
+		/**
+		 * The time of the last modification of the file in milliseconds since the epoch
+		 */
+		final long lastModified;
+
+		private Stat(final String name, final Path file, final BasicFileAttributes attributes) {
+			this.name = name;
+			this.file = file;
+			size = attributes.size();
+			lastModified = attributes.lastModifiedTime().toMillis();
+		}
+	}
+
+	private final Path root;
+
+	private final Collection<String> directories;
+
+	private volatile Map<String, Stat> files;
+
+	/**
+	 * Creates an index
+	 *
+	 * @param root
+	 *            The directory all paths are relative to
+	 * @param directories
+	 *            The directories below the root that are indexed
+	 */
+	FileIndex(final Path root, final Collection<String> directories) {
+		this.root = root;
+		this.directories = directories;
+	}
+
+	/**
+	 * Gets an indexed file
+	 *
+	 * @param name
+	 *            The path of the file relative to the root of the index, separated by slashes
+	 * @return The attributes of the file or null, if there is no such file
+	 */
+	Stat get(final String name) {
+		return getFiles().get(name);
+	}
+
+	private Map<String, Stat> getFiles() {
+		Map<String, Stat> result = files;
+		if (result == null) {
+			synchronized (this) {
+				result = files;
+				if (result == null) {
+					result = scan();
+					files = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets all indexed files, so the directories are scanned again when the index is used next
+	 */
+	synchronized void invalidate() {
+		files = null;
+	}
+
+	/**
+	 * Reads the attributes of a file again, e.g. after it was written, created or deleted
+	 *
+	 * @param name
+	 *            The path of the file relative to the root of the index, separated by slashes
+	 */
+	void refresh(final String name) {
+		final Map<String, Stat> current = getFiles();
+		final Path file = root.resolve(name);
+		try {
+			final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			if (attributes.isRegularFile()) {
+				current.put(name, new Stat(name, file, attributes));
+			} else {
+				current.remove(name);
+			}
+		} catch (final NoSuchFileException e) {
+			current.remove(name);
+		} catch (final IOException e) {
+			current.remove(name);
+			ErrorLogger.logError(e);
+		}
+	}
+
+	/**
+	 * Scans all indexed directories
+	 *
+	 * @return The attributes of all files in the indexed directories by their relative paths
+	 */
+	private Map<String, Stat> scan() {
+		final Map<String, Stat> result = new ConcurrentHashMap<>();
+		for (final String directory : directories) {
+			final Path start = root.resolve(directory);
+			if (!Files.isDirectory(start)) {
+				continue;
+			}
+			try {
+				Files.walkFileTree(start, new SimpleFileVisitor<>() {
+					@Override
+					public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+						if (attributes.isRegularFile()) {
+							final String name = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+							result.put(name, new Stat(name, file, attributes));
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+						ErrorLogger.logError(e);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (final IOException e) {
+				ErrorLogger.logError(e);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a new version of a group archive to a temporary file next to it
+ *
+ * Entries that did not change are copied as raw compressed bytes, so only changed entries have to be compressed. They
+ * are compressed in parallel up front, the archive itself is written sequentially. The temporary file replaces the
+ * archive with an atomic rename, so the archive is never left half-written.
+ */
+final class GroupArchiveWriter {
+
+	/**
+	 * The compressed content of a new entry
+	 */
+	private static class CompressedEntry {
+		private final int method;
+		private final byte[] data;
+		private final int length;
+		private final long crc;
+		private final long size;
+
+		private CompressedEntry(final int method, final byte[] data, final int length, final long crc, final long size) {
+			this.method = method;
+			this.data = data;
+			this.length = length;
+			this.crc = crc;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * An entry of the central directory of an existing archive
+	 */
+	private static class ExistingEntry {
+		private final String name;
+		private final byte[] rawName;
+		private final int flags;
+		private final int method;
+		private final int time;
+		private final int date;
+		private final long crc;
+		private final long compressedSize;
+		private final long size;
+		private final byte[] extra;
+		private final byte[] comment;
+		private final int externalAttributes;
+		private final long offset;
+
+		private ExistingEntry(final ByteBuffer cd) {
+			cd.getShort(); // version made by
+			cd.getShort(); // version needed to extract
+			flags = Short.toUnsignedInt(cd.getShort());
+			method = Short.toUnsignedInt(cd.getShort());
+			time = Short.toUnsignedInt(cd.getShort());
+			date = Short.toUnsignedInt(cd.getShort());
+			crc = Integer.toUnsignedLong(cd.getInt());
+			compressedSize = Integer.toUnsignedLong(cd.getInt());
+			size = Integer.toUnsignedLong(cd.getInt());
+			final int nameLength = Short.toUnsignedInt(cd.getShort());
+			final int extraLength = Short.toUnsignedInt(cd.getShort());
+			final int commentLength = Short.toUnsignedInt(cd.getShort());
+			cd.getShort(); // disk number
+			cd.getShort(); // internal attributes
+			externalAttributes = cd.getInt();
+			offset = Integer.toUnsignedLong(cd.getInt());
+			rawName = new byte[nameLength];
+			cd.get(rawName);
+			extra = new byte[extraLength];
+			cd.get(extra);
+			comment = new byte[commentLength];
+			cd.get(comment);
+			name = new String(rawName, StandardCharsets.UTF_8);
+		}
+	}
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_HEADER = 0x06054b50;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_HEADER_SIZE = 22;
+
+	private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+	private static final int FLAG_UTF8 = 0x800;
+
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
+	/**
+	 * The content of directory entries
+	 */
+	private static final CompressedEntry DIRECTORY = new CompressedEntry(STORED, new byte[0], 0, 0, 0);
+
+	/**
+	 * Compresses the content of an entry as raw deflate data
+	 *
+	 * @param content
+	 *            The uncompressed content
+	 * @param deflater
+	 *            The deflater to use, which is reset first
+	 * @return The compressed content
+	 */
+	private static CompressedEntry compress(final byte[] content, final Deflater deflater) {
+		final CRC32 crc = new CRC32();
+		crc.update(content);
+		deflater.reset();
+		deflater.setInput(content);
+		deflater.finish();
+		byte[] data = new byte[Math.max(64, content.length / 2)];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			length += deflater.deflate(data, length, data.length - length);
+		}
+		return new CompressedEntry(DEFLATED, data, length, crc.getValue(), content.length);
+	}
+
+	/**
+	 * Reads the central directory of an existing archive
+	 *
+	 * @param channel
+	 *            The channel to read the archive from
+	 * @return The entries of the archive in the order of the central directory
+	 * @throws IOException
+	 *             If the archive could not be read or uses features that are not supported
+	 */
+	private static List<ExistingEntry> readCentralDirectory(final FileChannel channel) throws IOException {
+		final long fileSize = channel.size();
+		if (fileSize == 0) return new ArrayList<>();
+		final int tailSize = (int) Math.min(fileSize, END_HEADER_SIZE + 0xFFFF);
+		final ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, tail, fileSize - tailSize);
+		int end = -1;
+		for (int i = tailSize - END_HEADER_SIZE; i >= 0; --i) {
+			if (tail.getInt(i) == END_HEADER) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) throw new ZipException("END header not found");
+		final int count = Short.toUnsignedInt(tail.getShort(end + 10));
+		final long cdSize = Integer.toUnsignedLong(tail.getInt(end + 12));
+		final long cdOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+		if (count == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) throw new ZipException("Zip64 archives are not supported");
+
+		final ByteBuffer cd = ByteBuffer.allocate((int) cdSize).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, cd, cdOffset);
+		cd.flip();
+		final List<ExistingEntry> entries = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			if (cd.getInt() != CENTRAL_HEADER) throw new ZipException("invalid CEN header");
+			entries.add(new ExistingEntry(cd));
+		}
+		return entries;
+	}
+
+	private static void readFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position);
+			if (read < 0) throw new ZipException("unexpected end of archive");
+			position += read;
+		}
+	}
+
+	/**
+	 * Replaces the archive with a previously written temporary file
+	 *
+	 * @param temporary
+	 *            The temporary file returned by write
+	 * @param archive
+	 *            The archive to replace
+	 * @throws IOException
+	 *             If the archive could not be replaced
+	 */
+	static void replace(final Path temporary, final Path archive) throws IOException {
+		try {
+			Files.move(temporary, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static int toDosDate(final LocalDateTime time) {
+		return Math.max(time.getYear() - 1980, 0) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+	}
+
+	private static int toDosTime(final LocalDateTime time) {
+		return time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+	}
+
+	private final Path archive;
+
+	private final Map<String, byte[]> changes = new LinkedHashMap<>();
+
+	private final ByteBuffer header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * The time in nanoseconds spent compressing entries while writing
+	 */
+	private long compressTime;
+
+	/**
+	 * Creates a writer for a new version of an archive
+	 *
+	 * @param archive
+	 *            The existing archive
+	 */
+	GroupArchiveWriter(final Path archive) {
+		this.archive = archive;
+	}
+
+	/**
+	 * Removes an entry from the archive
+	 *
+	 * @param name
+	 *            The name of the entry within the archive
+	 */
+	void delete(final String name) {
+		changes.put(name, null);
+	}
+
+	/**
+	 * Gets the time spent compressing entries while writing
+	 *
+	 * @return The time in nanoseconds
+	 */
+	long getCompressTime() {
+		return compressTime;
+	}
+
+	/**
+	 * Checks whether there are changes to write
+	 *
+	 * @return True, if no entries were put or deleted, false otherwise
+	 */
+	boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	/**
+	 * Adds or replaces an entry of the archive
+	 *
+	 * @param name
+	 *            The name of the entry within the archive
+	 * @param content
+	 *            The uncompressed content of the entry
+	 */
+	void put(final String name, final byte[] content) {
+		changes.put(name, content);
+	}
+
+	/**
+	 * Writes the new version of the archive to a temporary file next to it
+	 *
+	 * The existing archive is only read, so it may stay open for readers until the temporary file replaces it.
+	 *
+	 * @return The temporary file containing the new version of the archive
+	 * @throws IOException
+	 *             If the archive could not be written
+	 */
+	Path write() throws IOException {
+		final Path directory = archive.toAbsolutePath().getParent();
+		final Map<String, CompressedEntry> compressed = compress();
+		final Path temporary = Files.createTempFile(directory, archive.getFileName() + ".", ".tmp");
+		try (FileChannel in = Files.exists(archive) ? FileChannel.open(archive, StandardOpenOption.READ) : null;
+				FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final List<ExistingEntry> existing = in != null ? readCentralDirectory(in) : new ArrayList<>();
+			final OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16);
+			final ByteArrayOutputStream central = new ByteArrayOutputStream();
+			final Set<String> names = new HashSet<>();
+			final Map<String, byte[]> remaining = new LinkedHashMap<>(changes);
+			long position = 0;
+			int count = 0;
+
+			final LocalDateTime now = LocalDateTime.now();
+			final int dosTime = toDosTime(now);
+			final int dosDate = toDosDate(now);
+			for (final ExistingEntry entry : existing) {
+				if (remaining.containsKey(entry.name)) {
+					if (remaining.remove(entry.name) != null) {
+						position = writeNew(stream, central, entry.name, compressed.get(entry.name), dosTime, dosDate, position);
+						names.add(entry.name);
+						++count;
+					}
+					continue;
+				}
+				stream.flush();
+				position = copyRaw(in, out, stream, central, entry, position);
+				names.add(entry.name);
+				++count;
+			}
+			for (final Entry<String, byte[]> change : remaining.entrySet()) {
+				if (change.getValue() == null) {
+					continue;
+				}
+				final String name = change.getKey();
+				for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+					final String parent = name.substring(0, i + 1);
+					if (names.add(parent)) {
+						position = writeNew(stream, central, parent, DIRECTORY, dosTime, dosDate, position);
+						++count;
+					}
+				}
+				position = writeNew(stream, central, name, compressed.get(name), dosTime, dosDate, position);
+				names.add(name);
+				++count;
+			}
+
+			if (count > 0xFFFF || position > 0xFFFFFFFFL) throw new ZipException("Zip64 archives are not supported");
+			central.writeTo(stream);
+			header.clear();
+			header.putInt(END_HEADER);
+			header.putShort((short) 0);
+			header.putShort((short) 0);
+			header.putShort((short) count);
+			header.putShort((short) count);
+			header.putInt(central.size());
+			header.putInt((int) position);
+			header.putShort((short) 0);
+			stream.write(header.array(), 0, END_HEADER_SIZE);
+			stream.flush();
+			out.force(true);
+		} catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		return temporary;
+	}
+
+	/**
+	 * Compresses the content of all entries that were put
+	 *
+	 * The entries are distributed among up to one worker per available processor, each with its own deflater.
+	 *
+	 * @return The compressed contents by the names of the entries
+	 */
+	private Map<String, CompressedEntry> compress() {
+		final List<Entry<String, byte[]>> entries = new ArrayList<>();
+		for (final Entry<String, byte[]> change : changes.entrySet()) {
+			if (change.getValue() != null) {
+				entries.add(change);
+			}
+		}
+		final long start = System.nanoTime();
+		final CompressedEntry[] compressed = new CompressedEntry[entries.size()];
+		final AtomicInteger next = new AtomicInteger();
+		final int workers = Math.min(entries.size(), Runtime.getRuntime().availableProcessors());
+		IntStream.range(0, workers).parallel().forEach(worker -> {
+			final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				for (int i = next.getAndIncrement(); i < compressed.length; i = next.getAndIncrement()) {
+					compressed[i] = compress(entries.get(i).getValue(), deflater);
+				}
+			} finally {
+				deflater.end();
+			}
+		});
+		compressTime += System.nanoTime() - start;
+		final Map<String, CompressedEntry> result = new HashMap<>();
+		for (int i = 0; i < compressed.length; ++i) {
+			result.put(entries.get(i).getKey(), compressed[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Copies an unchanged entry without decompressing it
+	 */
+	private long copyRaw(final FileChannel in, final FileChannel out, final OutputStream stream, final ByteArrayOutputStream central,
+			final ExistingEntry entry, final long position) throws IOException {
+		final ByteBuffer local = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(in, local, entry.offset);
+		if (local.getInt(0) != LOCAL_HEADER) throw new ZipException("invalid LOC header for " + entry.name);
+		final long dataStart = entry.offset + LOCAL_HEADER_SIZE + Short.toUnsignedInt(local.getShort(26)) + Short.toUnsignedInt(local.getShort(28));
+		final int flags = entry.flags & ~FLAG_DATA_DESCRIPTOR;
+
+		writeLocalHeader(stream, entry.rawName, flags, entry.method, entry.time, entry.date, entry.crc, entry.compressedSize, entry.size);
+		stream.flush();
+		long transferred = 0;
+		while (transferred < entry.compressedSize) {
+			final long count = in.transferTo(dataStart + transferred, entry.compressedSize - transferred, out);
+			if (count <= 0) throw new ZipException("unexpected end of archive in " + entry.name);
+			transferred += count;
+		}
+		writeCentralHeader(central, entry.rawName, flags, entry.method, entry.time, entry.date, entry.crc, entry.compressedSize, entry.size,
+				entry.extra, entry.comment, entry.externalAttributes, position);
+		return position + LOCAL_HEADER_SIZE + entry.rawName.length + entry.compressedSize;
+	}
+
+	private void writeCentralHeader(final ByteArrayOutputStream central, final byte[] name, final int flags, final int method, final int time,
+			final int date, final long crc, final long compressedSize, final long size, final byte[] extra, final byte[] comment,
+			final int externalAttributes, final long offset) {
+		header.clear();
+		header.putInt(CENTRAL_HEADER);
+		header.putShort((short) 20);
+		header.putShort((short) (method == STORED ? 10 : 20));
+		header.putShort((short) flags);
+		header.putShort((short) method);
+		header.putShort((short) time);
+		header.putShort((short) date);
+		header.putInt((int) crc);
+		header.putInt((int) compressedSize);
+		header.putInt((int) size);
+		header.putShort((short) name.length);
+		header.putShort((short) extra.length);
+		header.putShort((short) comment.length);
+		header.putShort((short) 0);
+		header.putShort((short) 0);
+		header.putInt(externalAttributes);
+		header.putInt((int) offset);
+		central.write(header.array(), 0, CENTRAL_HEADER_SIZE);
+		central.writeBytes(name);
+		central.writeBytes(extra);
+		central.writeBytes(comment);
+	}
+
+	private void writeLocalHeader(final OutputStream stream, final byte[] name, final int flags, final int method, final int time, final int date,
+			final long crc, final long compressedSize, final long size) throws IOException {
+		header.clear();
+		header.putInt(LOCAL_HEADER);
+		header.putShort((short) (method == STORED ? 10 : 20));
+		header.putShort((short) flags);
+		header.putShort((short) method);
+		header.putShort((short) time);
+		header.putShort((short) date);
+		header.putInt((int) crc);
+		header.putInt((int) compressedSize);
+		header.putInt((int) size);
+		header.putShort((short) name.length);
+		header.putShort((short) 0);
+		stream.write(header.array(), 0, LOCAL_HEADER_SIZE);
+		stream.write(name);
+	}
+
+	/**
+	 * Writes a new entry with its previously compressed content
+	 */
+	private long writeNew(final OutputStream stream, final ByteArrayOutputStream central, final String name, final CompressedEntry entry,
+			final int time, final int date, final long position) throws IOException {
+		final byte[] rawName = name.getBytes(StandardCharsets.UTF_8);
+		final int flags = rawName.length != name.length() ? FLAG_UTF8 : 0;
+		writeLocalHeader(stream, rawName, flags, entry.method, time, date, entry.crc, entry.length, entry.size);
+		stream.write(entry.data, 0, entry.length);
+		writeCentralHeader(central, rawName, flags, entry.method, time, date, entry.crc, entry.length, entry.size, new byte[0], new byte[0], 0,
+				position);
+		return position + LOCAL_HEADER_SIZE + rawName.length + entry.length;
+	}
+}
@@ -27,20 +27,55 @@ import java.util.zip.ZipOutputStream;
 import org.controlsfx.dialog.CommandLinksDialog;
 import org.controlsfx.dialog.CommandLinksDialog.CommandLinksButtonType;
 
+import dsatool.gui.ThemedAlert;
 import dsatool.plugins.Plugin;
 import dsatool.plugins.PluginLoader;
 import dsatool.util.ErrorLogger;
 import dsatool.util.Util;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 
 /**
- * Manages the zip file that contains the group data
+ * Manages the zip file or directory that contains the group data
  *
  * @author user
  */
 public class GroupFileManager {
+	/**
+	 * Asks the user to choose an empty directory for a new group, which saves every resource to a file of its own
+	 *
+	 * @return True, if a new group was created, false otherwise
+	 */
+	public static boolean createNewGroupDirectory() {
+		final DirectoryChooser dialog = new DirectoryChooser();
+
+		dialog.setTitle("Gruppe als Ordner anlegen");
+
+		final File directory = dialog.showDialog(null);
+		if (directory != null) {
+			final String[] content = directory.list();
+			if (content == null || content.length > 0) {
+				final Alert error = new ThemedAlert(AlertType.ERROR);
+				error.setTitle("Gruppe als Ordner anlegen");
+				error.setHeaderText("Der Ordner ist nicht leer.");
+				error.setContentText("Für eine neue Gruppe muss ein leerer Ordner ausgewählt werden.");
+				error.showAndWait();
+				return false;
+			}
+			ResourceManager.discardResources();
+			ResourceManager.setZipFile(directory);
+			for (final Plugin plugin : PluginLoader.plugins.values()) {
+				plugin.loadData();
+			}
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Asks the user to create a new zip file for a new group
 	 *
@@ -78,6 +113,7 @@ public class GroupFileManager {
 				final File zipFile = new File(zipPath);
 				if (zipFile.exists()) {
 					ResourceManager.setZipFile(new File(zipPath));
+					recoverChanges();
 					return;
 				}
 			}
@@ -89,7 +125,8 @@ public class GroupFileManager {
 		boolean zipFileExists = false;
 		while (!zipFileExists) {
 			final Dialog<ButtonType> groupDialog = new CommandLinksDialog(new CommandLinksButtonType("Gruppe erstellen", true),
-					new CommandLinksButtonType("Gruppe laden", false), new CommandLinksButtonType("Schließen", false));
+					new CommandLinksButtonType("Gruppe laden", false), new CommandLinksButtonType("Gruppe als Ordner erstellen", false),
+					new CommandLinksButtonType("Gruppenordner laden", false), new CommandLinksButtonType("Schließen", false));
 			groupDialog.setTitle("Neue Gruppe erstellen");
 			groupDialog.setHeaderText(
 					"Es wurde keine aktuelle Gruppe gefunden oder die aktuelle Gruppe konnte nicht geöffnet werden.\nWie soll vorgegangen werden?");
@@ -100,6 +137,8 @@ public class GroupFileManager {
 			zipFileExists = switch (result.get().getText()) {
 				case "Gruppe erstellen" -> createNewZipFile();
 				case "Gruppe laden" -> openNewGroup();
+				case "Gruppe als Ordner erstellen" -> createNewGroupDirectory();
+				case "Gruppenordner laden" -> openGroupDirectory();
 				default -> {
 					System.exit(0);
 					yield false;
@@ -108,6 +147,44 @@ public class GroupFileManager {
 		}
 	}
 
+	/**
+	 * Asks the user whether to recover changes to the current group that were not saved before the application was
+	 * closed unexpectedly
+	 */
+	private static void recoverChanges() {
+		if (!ResourceManager.hasRecoverableChanges()) return;
+		final Alert recoverConfirmation = new ThemedAlert(AlertType.CONFIRMATION);
+		recoverConfirmation.setTitle("Änderungen wiederherstellen?");
+		recoverConfirmation.setHeaderText("DSATool wurde nicht ordnungsgemäß beendet.");
+		recoverConfirmation.setContentText("Sollen die ungespeicherten Änderungen an der Gruppe wiederhergestellt werden?");
+		recoverConfirmation.getButtonTypes().setAll(ButtonType.YES, ButtonType.NO);
+
+		final Optional<ButtonType> result = recoverConfirmation.showAndWait();
+		ResourceManager.recoverChanges(result.isPresent() && result.get().equals(ButtonType.YES));
+	}
+
+	/**
+	 * Opens a group that is stored in a directory
+	 *
+	 * @return True, if a directory was opened, false otherwise
+	 */
+	public static boolean openGroupDirectory() {
+		final DirectoryChooser dialog = new DirectoryChooser();
+
+		dialog.setTitle("Gruppenordner öffnen");
+
+		final File directory = dialog.showDialog(null);
+		if (directory != null) {
+			ResourceManager.discardResources();
+			ResourceManager.setZipFile(directory);
+			for (final Plugin plugin : PluginLoader.plugins.values()) {
+				plugin.loadData();
+			}
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Opens a group zip file
 	 *
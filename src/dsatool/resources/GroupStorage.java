@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Stores the resources of a group
+ *
+ * Entries are addressed by their names relative to the group, separated by slashes, e.g. "characters/Alrik.json". Reads
+ * may happen concurrently with each other and with a write, the ResourceManager never writes concurrently.
+ */
+public interface GroupStorage extends Closeable {
+
+	/**
+	 * Opens the storage for a group
+	 *
+	 * Zip files are opened together with a log of changes if that is enabled in the settings. If it was disabled since,
+	 * the log is merged into the zip file first.
+	 *
+	 * @param location
+	 *            A directory containing the files of the group or a zip file containing them
+	 * @return The storage for the group
+	 */
+	static GroupStorage open(final File location) {
+		if (location.isDirectory()) return new DirectoryGroupStorage(location.toPath());
+		if (Settings.getSettingBoolOrDefault(false, "Allgemein", "Änderungsprotokoll")) return new LogGroupStorage(location.toPath());
+		if (new File(location.getPath() + ".log").exists()) {
+			LogGroupStorage.merge(location.toPath());
+		}
+		return new ZipGroupStorage(location.toPath());
+	}
+
+	/**
+	 * Deletes an entry
+	 *
+	 * @param name
+	 *            The name of the entry
+	 * @throws IOException
+	 *             If the entry could not be deleted
+	 */
+	default void delete(final String name) throws IOException {
+		final Map<String, byte[]> changes = new HashMap<>();
+		changes.put(name, null);
+		write(changes);
+	}
+
+	/**
+	 * Calls an action for every resource below a directory, in the order of their paths
+	 *
+	 * Only files with the extension .json are resources, other files are skipped, so they are not read as resources and
+	 * written back as empty ones.
+	 *
+	 * @param path
+	 *            The directory to traverse
+	 * @param action
+	 *            The action to call for every resource file
+	 */
+	void forEachFile(String path, Consumer<ResourceInfo> action);
+
+	/**
+	 * Gets the description of a file
+	 *
+	 * @param name
+	 *            The name of the entry
+	 * @return The description of the file or null, if there is no such file
+	 */
+	ResourceInfo getInfo(String name);
+
+	/**
+	 * Gets the location of the storage, which the recovery journal is kept next to
+	 *
+	 * @return The path of the storage or null, if it is not backed by the file system
+	 */
+	Path getLocation();
+
+	/**
+	 * Lists the direct children of a directory
+	 *
+	 * @param path
+	 *            The directory to list
+	 * @return The files and directories in that directory, ordered by name
+	 */
+	List<ResourceInfo> list(String path);
+
+	/**
+	 * Reads the content of a file
+	 *
+	 * @param name
+	 *            The name of the entry
+	 * @return The uncompressed content or null, if there is no such file
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	byte[] read(String name) throws IOException;
+
+	/**
+	 * Renames an entry
+	 *
+	 * @param name
+	 *            The current name of the entry
+	 * @param newName
+	 *            The new name of the entry, which is replaced if it exists
+	 * @throws IOException
+	 *             If the entry could not be renamed
+	 */
+	default void rename(final String name, final String newName) throws IOException {
+		final byte[] content = read(name);
+		if (content == null) throw new NoSuchFileException(name);
+		final Map<String, byte[]> changes = new LinkedHashMap<>();
+		changes.put(newName, content);
+		changes.put(name, null);
+		write(changes);
+	}
+
+	/**
+	 * Writes a batch of changes
+	 *
+	 * Zip files and logs write a batch atomically. Directories only guarantee this for each file, a batch that fails
+	 * while its files are replaced may be written partially.
+	 *
+	 * @param changes
+	 *            The new contents by the names of the entries, null for entries to delete
+	 * @throws IOException
+	 *             If the changes could not be written
+	 */
+	void write(Map<String, byte[]> changes) throws IOException;
+}
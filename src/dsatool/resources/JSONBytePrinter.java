@@ -0,0 +1,345 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+import jsonant.value.JSONValue;
+
+/**
+ * Prints json values as UTF-8 encoded bytes
+ *
+ * The output is identical to that of {@link jsonant.print.JSONPrinter} written through a UTF-8 encoding Writer, but the
+ * characters are encoded directly into a buffer that is reused by every thread. Integral numbers and strings are encoded
+ * without creating intermediate Strings or char arrays.
+ */
+final class JSONBytePrinter {
+
+	/**
+	 * The number of entries above which the entries of an object are printed on separate lines
+	 */
+	private static final int MULTILINE_OBJECT_SIZE = 5;
+
+	/**
+	 * The number of elements above which the elements of an array are printed on separate lines
+	 */
+	private static final int MULTILINE_ARRAY_SIZE = 10;
+
+	private static final int INITIAL_CAPACITY = 8192;
+
+	/**
+	 * The capacity above which the buffer is not kept for the next use, so a single large resource does not hold on to its
+	 * memory
+	 */
+	private static final int RETAINED_CAPACITY = 1 << 22;
+
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+	private static final byte[] KEY_SEPARATOR = { ' ', ':', ' ' };
+
+	private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+	private static final ThreadLocal<JSONBytePrinter> printers = ThreadLocal.withInitial(JSONBytePrinter::new);
+
+	/**
+	 * Gets the printer of the current thread with an empty buffer
+	 *
+	 * @return The printer
+	 */
+	private static JSONBytePrinter acquire() {
+		final JSONBytePrinter printer = printers.get();
+		printer.count = 0;
+		return printer;
+	}
+
+	/**
+	 * Prints a json object
+	 *
+	 * @param object
+	 *            The object to print
+	 * @return The UTF-8 encoded json
+	 */
+	static byte[] print(final JSONObject object) {
+		final JSONBytePrinter printer = acquire();
+		try {
+			printer.print(object, 0);
+			return Arrays.copyOf(printer.buffer, printer.count);
+		} finally {
+			printer.release();
+		}
+	}
+
+	/**
+	 * Prints a json object to a channel
+	 *
+	 * @param object
+	 *            The object to print
+	 * @param channel
+	 *            The channel to write the UTF-8 encoded json to
+	 * @throws IOException
+	 *             If the channel could not be written
+	 */
+	static void print(final JSONObject object, final WritableByteChannel channel) throws IOException {
+		final JSONBytePrinter printer = acquire();
+		try {
+			printer.print(object, 0);
+			final ByteBuffer content = ByteBuffer.wrap(printer.buffer, 0, printer.count);
+			while (content.hasRemaining()) {
+				channel.write(content);
+			}
+		} finally {
+			printer.release();
+		}
+	}
+
+	private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+	private int count;
+
+	private JSONBytePrinter() {}
+
+	/**
+	 * Makes room for additional bytes
+	 *
+	 * @param additional
+	 *            The number of bytes that are about to be written
+	 */
+	private void ensureCapacity(final int additional) {
+		if (count + additional > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + additional));
+		}
+	}
+
+	private void indent(final int level) {
+		ensureCapacity(level);
+		Arrays.fill(buffer, count, count + level, (byte) '\t');
+		count += level;
+	}
+
+	private void print(final JSONArray array, final int level) {
+		write('[');
+		final boolean multiline = array.size() > MULTILINE_ARRAY_SIZE;
+		final int childLevel = multiline ? level + 1 : level;
+		boolean first = true;
+		for (int i = 0; i < array.size(); ++i) {
+			final Object value = array.getUnsafe(i);
+			if (value instanceof final JSONValue jsonValue && !jsonValue.shouldBePrinted()) {
+				continue;
+			}
+			if (!first) {
+				write(',');
+			}
+			if (multiline) {
+				write('\n');
+				indent(childLevel);
+			} else if (!first) {
+				write(' ');
+			}
+			first = false;
+			print(value, childLevel);
+		}
+		if (multiline) {
+			write('\n');
+			indent(level);
+		}
+		write(']');
+	}
+
+	private void print(final JSONObject object, final int level) {
+		write('{');
+		final boolean multiline = object.size() > MULTILINE_OBJECT_SIZE;
+		final int childLevel = multiline ? level + 1 : level;
+		boolean first = true;
+		for (final String key : object.keySet()) {
+			final Object value = object.getUnsafe(key);
+			if (value instanceof final JSONValue jsonValue && !jsonValue.shouldBePrinted()) {
+				continue;
+			}
+			if (!first) {
+				write(',');
+			}
+			first = false;
+			if (multiline) {
+				write('\n');
+				indent(childLevel);
+			} else {
+				write(' ');
+			}
+			print(key);
+			write(KEY_SEPARATOR);
+			print(value, childLevel);
+		}
+		if (multiline) {
+			write('\n');
+			indent(level);
+		} else {
+			write(' ');
+		}
+		write('}');
+	}
+
+	private void print(final long value) {
+		if (value == Long.MIN_VALUE) {
+			write(MIN_LONG);
+			return;
+		}
+		long remaining = Math.abs(value);
+		int digits = 1;
+		for (long limit = 10; digits < 19 && remaining >= limit; limit *= 10) {
+			++digits;
+		}
+		final int length = value < 0 ? digits + 1 : digits;
+		ensureCapacity(length);
+		if (value < 0) {
+			buffer[count] = '-';
+		}
+		for (int i = count + length - 1; i >= count + length - digits; --i) {
+			buffer[i] = (byte) ('0' + remaining % 10);
+			remaining /= 10;
+		}
+		count += length;
+	}
+
+	private void print(final Object value, final int level) {
+		switch (value) {
+			case null -> write(NULL);
+			case final JSONObject object -> print(object, level);
+			case final JSONArray array -> print(array, level);
+			case final String string -> print(string);
+			case final Long number -> print(number.longValue());
+			case final Integer number -> print(number.longValue());
+			default -> printUnescaped(value.toString());
+		}
+	}
+
+	/**
+	 * Prints a string as a quoted and escaped json string
+	 *
+	 * @param string
+	 *            The string to print
+	 */
+	private void print(final String string) {
+		write('"');
+		final int length = string.length();
+		for (int i = 0; i < length; ++i) {
+			final char c = string.charAt(i);
+			switch (c) {
+				case '"' -> write('\\', '"');
+				case '\\' -> write('\\', '\\');
+				case '\b' -> write('\\', 'b');
+				case '\f' -> write('\\', 'f');
+				case '\n' -> write('\\', 'n');
+				case '\r' -> write('\\', 'r');
+				case '\t' -> write('\\', 't');
+				default -> i = write(string, i);
+			}
+		}
+		write('"');
+	}
+
+	/**
+	 * Prints a string as it is, e.g. the textual representation of a number
+	 *
+	 * @param string
+	 *            The string to print
+	 */
+	private void printUnescaped(final String string) {
+		for (int i = 0; i < string.length(); ++i) {
+			i = write(string, i);
+		}
+	}
+
+	/**
+	 * Drops the buffer if it grew too large to be kept
+	 */
+	private void release() {
+		if (buffer.length > RETAINED_CAPACITY) {
+			buffer = new byte[INITIAL_CAPACITY];
+		}
+		count = 0;
+	}
+
+	private void write(final byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, count, bytes.length);
+		count += bytes.length;
+	}
+
+	private void write(final char c) {
+		ensureCapacity(1);
+		buffer[count++] = (byte) c;
+	}
+
+	private void write(final char first, final char second) {
+		ensureCapacity(2);
+		buffer[count++] = (byte) first;
+		buffer[count++] = (byte) second;
+	}
+
+	/**
+	 * Writes a character of a string as UTF-8
+	 *
+	 * @param string
+	 *            The string
+	 * @param index
+	 *            The index of the character
+	 * @return The index of the last character that was written, which is the next one for surrogate pairs
+	 */
+	private int write(final String string, final int index) {
+		final char c = string.charAt(index);
+		if (c < 0x80) {
+			write(c);
+		} else if (Character.isHighSurrogate(c) && index + 1 < string.length() && Character.isLowSurrogate(string.charAt(index + 1))) {
+			writeCodePoint(Character.toCodePoint(c, string.charAt(index + 1)));
+			return index + 1;
+		} else {
+			writeCodePoint(c);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes a code point outside of ASCII as UTF-8
+	 *
+	 * Unpaired surrogates are replaced by a question mark, like the UTF-8 encoder of an OutputStreamWriter does.
+	 *
+	 * @param codePoint
+	 *            The code point to write
+	 */
+	private void writeCodePoint(final int codePoint) {
+		ensureCapacity(4);
+		if (codePoint < 0x800) {
+			buffer[count++] = (byte) (0xC0 | codePoint >> 6);
+			buffer[count++] = (byte) (0x80 | codePoint & 0x3F);
+		} else if (Character.isSurrogate((char) codePoint) && codePoint <= Character.MAX_VALUE) {
+			buffer[count++] = '?';
+		} else if (codePoint < 0x10000) {
+			buffer[count++] = (byte) (0xE0 | codePoint >> 12);
+			buffer[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+			buffer[count++] = (byte) (0x80 | codePoint & 0x3F);
+		} else {
+			buffer[count++] = (byte) (0xF0 | codePoint >> 18);
+			buffer[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+			buffer[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+			buffer[count++] = (byte) (0x80 | codePoint & 0x3F);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+
+import dsatool.util.ErrorLogger;
+import jsonant.event.JSONListener;
+import jsonant.value.JSONValue;
+
+/**
+ * Registers listeners for json values and removes them from the listener registry of jsonant
+ *
+ * jsonant keeps every value a listener was ever registered for in a static map, even after all of its listeners were
+ * removed. This class allows the ResourceManager to drop these entries, so discarded resources can be collected. The
+ * registry is not part of the public API of jsonant, so it is only accessed in {@link #remove(JSONValue, JSONListener)}.
+ * If it cannot be accessed, values are never forgotten.
+ */
+final class JSONListeners {
+
+	private static final Map<JSONValue, Set<WeakReference<JSONListener>>> jsonListeners = registry("jsonListeners");
+
+	/**
+	 * Registers a listener for a value
+	 *
+	 * @param value
+	 *            The value to listen to
+	 * @param listener
+	 *            The listener to register
+	 */
+	static void add(final JSONValue value, final JSONListener listener) {
+		synchronized (JSONValue.class) {
+			value.addListener(listener);
+		}
+	}
+
+	/**
+	 * Gets one of the static listener maps of jsonant
+	 *
+	 * @param name
+	 *            The name of the field holding the map
+	 * @return The map or null, if it cannot be accessed
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<JSONValue, Set<WeakReference<JSONListener>>> registry(final String name) {
+		try {
+			final Field field = JSONValue.class.getDeclaredField(name);
+			field.setAccessible(true);
+			return (Map<JSONValue, Set<WeakReference<JSONListener>>>) field.get(null);
+		} catch (final ReflectiveOperationException | RuntimeException e) {
+			ErrorLogger.logError(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Removes a listener from a value and forgets the value if it has no other listeners left
+	 *
+	 * @param value
+	 *            The value the listener was registered for
+	 * @param listener
+	 *            The listener to remove
+	 */
+	static void remove(final JSONValue value, final JSONListener listener) {
+		synchronized (JSONValue.class) {
+			value.removeListener(listener);
+			final Set<WeakReference<JSONListener>> listeners = jsonListeners != null ? jsonListeners.get(value) : null;
+			if (listeners != null) {
+				listeners.removeIf(reference -> reference.get() == null);
+				if (listeners.isEmpty()) {
+					jsonListeners.remove(value);
+				}
+			}
+		}
+	}
+
+	private JSONListeners() {}
+}
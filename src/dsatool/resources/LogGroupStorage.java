@@ -0,0 +1,541 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import dsatool.util.ErrorLogger;
+
+/**
+ * Stores a group as a zip snapshot and a log of the changes made since the snapshot was written
+ *
+ * Saving appends the changed entries to the log, each as a record with its own checksum like the records of the
+ * {@link RecoveryJournal}. An in-memory index points to the latest record of every entry, entries without records are
+ * read from the snapshot. When the log grows larger than the snapshot, it is compacted into a new snapshot in the
+ * background. When the group is opened, the log is replayed up to the first damaged record.
+ */
+final class LogGroupStorage implements GroupStorage {
+
+	/**
+	 * The location of the content of an entry
+	 */
+	private static final class Location {
+		/**
+		 * The position of the content in the log or -1, if it is read from the snapshot
+		 */
+		private final long offset;
+
+		/**
+		 * The size of the content in bytes
+		 */
+		private final int size;
+
+		/**
+		 * The CRC-32 of the content
+		 */
+		private final long crc;
+
+		private Location(final long offset, final int size, final long crc) {
+			this.offset = offset;
+			this.size = size;
+			this.crc = crc;
+		}
+	}
+
+	/**
+	 * The size of the length and checksum preceding every record
+	 */
+	private static final int RECORD_HEADER = Integer.BYTES + Long.BYTES;
+
+	/**
+	 * The size in bytes the log has to exceed before it is compacted
+	 */
+	private static final long COMPACTION_MINIMUM = 1 << 20;
+
+	/**
+	 * The ratio between the sizes of the log and the snapshot above which the log is compacted
+	 */
+	private static final double COMPACTION_RATIO = 1.0;
+
+	/**
+	 * Encodes a change as the content of a record
+	 *
+	 * @param name
+	 *            The name of the entry
+	 * @param content
+	 *            The new content of the entry, null if it is deleted
+	 * @return The content of the record
+	 * @throws IOException
+	 *             If the change could not be encoded
+	 */
+	private static byte[] encode(final String name, final byte[] content) throws IOException {
+		final ByteArrayOutputStream record = new ByteArrayOutputStream(content != null ? content.length + name.length() + 8 : name.length() + 8);
+		final DataOutputStream out = new DataOutputStream(record);
+		out.writeUTF(name);
+		out.writeBoolean(content == null);
+		if (content != null) {
+			out.write(content);
+		}
+		return record.toByteArray();
+	}
+
+	private static String entryName(final ResourceInfo info) {
+		return info.getName().endsWith(".json") ? info.getPath() + ".json" : info.getPath();
+	}
+
+	private static ResourceInfo info(final String name, final Location location) {
+		final String path = name.endsWith(".json") ? name.substring(0, name.length() - 5) : name;
+		return new ResourceInfo(path, name.substring(name.lastIndexOf('/') + 1), location.size, location.crc, false);
+	}
+
+	/**
+	 * Writes all changes recorded in the log of a group to its zip file and removes the log
+	 *
+	 * @param archive
+	 *            The zip file of the group
+	 */
+	static void merge(final Path archive) {
+		final LogGroupStorage storage = new LogGroupStorage(archive);
+		try {
+			storage.compact();
+		} finally {
+			try {
+				storage.close();
+				if (storage.logSize == 0) {
+					Files.deleteIfExists(storage.log);
+				}
+			} catch (final IOException e) {
+				ErrorLogger.logError(e);
+			}
+		}
+	}
+
+	private static String trim(final String path) {
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/') {
+			++start;
+		}
+		while (end > start && path.charAt(end - 1) == '/') {
+			--end;
+		}
+		return path.substring(start, end);
+	}
+
+	private final ZipGroupStorage snapshot;
+
+	private final Path log;
+
+	/**
+	 * The open log, null if it could not be opened or the storage was closed
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The size of the intact part of the log, which new records are written after
+	 */
+	private long logSize;
+
+	/**
+	 * The size of the snapshot when it was last written
+	 */
+	private volatile long snapshotSize;
+
+	/**
+	 * The locations of all entries that exist, ordered by name
+	 */
+	private final ConcurrentSkipListMap<String, Location> entries = new ConcurrentSkipListMap<>();
+
+	/**
+	 * The positions of the records of entries that were deleted since the snapshot was written
+	 */
+	private final Map<String, Long> deleted = new HashMap<>();
+
+	/**
+	 * Guards the log against being replaced while it is read or written
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Held while the log is compacted, so the storage is not closed in the meantime
+	 */
+	private final ReentrantLock compaction = new ReentrantLock();
+
+	private final AtomicBoolean compacting = new AtomicBoolean();
+
+	/**
+	 * Opens the snapshot and the log of a group and replays the log
+	 *
+	 * @param archive
+	 *            The zip file containing the snapshot, the log is kept next to it
+	 */
+	LogGroupStorage(final Path archive) {
+		snapshot = new ZipGroupStorage(archive);
+		log = Paths.get(snapshot.getLocation() + ".log");
+		indexSnapshot("");
+		try {
+			snapshotSize = Files.exists(snapshot.getLocation()) ? Files.size(snapshot.getLocation()) : 0;
+			channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			replay();
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+		}
+	}
+
+	/**
+	 * Updates the index for a record of the log
+	 *
+	 * Has to be called while holding the write lock or before the storage is published.
+	 *
+	 * @param record
+	 *            The content of the record
+	 * @param position
+	 *            The position of the record in the log
+	 * @throws IOException
+	 *             If the record could not be decoded
+	 */
+	private void apply(final byte[] record, final long position) throws IOException {
+		final ByteArrayInputStream bytes = new ByteArrayInputStream(record);
+		final DataInputStream in = new DataInputStream(bytes);
+		final String name = in.readUTF();
+		if (in.readBoolean()) {
+			entries.remove(name);
+			deleted.put(name, position);
+		} else {
+			final int size = bytes.available();
+			final CRC32 crc = new CRC32();
+			crc.update(record, record.length - size, size);
+			entries.put(name, new Location(position + RECORD_HEADER + record.length - size, size, crc.getValue()));
+			deleted.remove(name);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		compaction.lock();
+		try {
+			lock.writeLock().lock();
+			try {
+				if (channel != null) {
+					channel.close();
+					channel = null;
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+			snapshot.close();
+		} finally {
+			compaction.unlock();
+		}
+	}
+
+	/**
+	 * Writes the entries recorded in the log to a new snapshot and removes their records from the log
+	 *
+	 * Records that are appended while the snapshot is written are kept. If the application crashes in between, the
+	 * records are replayed on top of the new snapshot, which has the same result.
+	 */
+	void compact() {
+		compaction.lock();
+		try {
+			final long end;
+			final Map<String, Location> compacted = new LinkedHashMap<>();
+			final List<String> removed = new ArrayList<>();
+			lock.readLock().lock();
+			try {
+				if (channel == null) return;
+				end = logSize;
+				for (final Entry<String, Location> entry : entries.entrySet()) {
+					if (entry.getValue().offset >= 0) {
+						compacted.put(entry.getKey(), entry.getValue());
+					}
+				}
+				removed.addAll(deleted.keySet());
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			final Map<String, byte[]> changes = new LinkedHashMap<>();
+			for (final String name : removed) {
+				changes.put(name, null);
+			}
+			for (final Entry<String, Location> entry : compacted.entrySet()) {
+				changes.put(entry.getKey(), readLog(entry.getValue()));
+			}
+			snapshot.write(changes);
+
+			lock.writeLock().lock();
+			try {
+				if (channel == null) return;
+				final Path temporary = Files.createTempFile(log.toAbsolutePath().getParent(), log.getFileName() + ".", ".tmp");
+				try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+					long transferred = 0;
+					while (transferred < logSize - end) {
+						transferred += channel.transferTo(end + transferred, logSize - end - transferred, out);
+					}
+					out.force(true);
+				}
+				channel.close();
+				try {
+					GroupArchiveWriter.replace(temporary, log);
+				} catch (final IOException e) {
+					Files.deleteIfExists(temporary);
+					throw e;
+				} finally {
+					channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				}
+				entries.replaceAll((name, location) -> {
+					if (location.offset < 0) return location;
+					if (location.offset < end) return new Location(-1, location.size, location.crc);
+					return new Location(location.offset - end, location.size, location.crc);
+				});
+				deleted.values().removeIf(position -> position < end);
+				deleted.replaceAll((name, position) -> position - end);
+				logSize -= end;
+				snapshotSize = Files.size(snapshot.getLocation());
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+		} finally {
+			compaction.unlock();
+		}
+	}
+
+	/**
+	 * Starts compacting the log in the background if it grew too large compared to the snapshot
+	 */
+	private void compactIfNeeded() {
+		if (logSize < COMPACTION_MINIMUM || logSize < snapshotSize * COMPACTION_RATIO || !compacting.compareAndSet(false, true)) return;
+		final Thread thread = new Thread(() -> {
+			try {
+				compact();
+			} finally {
+				compacting.set(false);
+			}
+		}, "DSATool-LogCompactor");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	@Override
+	public void forEachFile(final String path, final Consumer<ResourceInfo> action) {
+		final String directory = trim(path);
+		if (directory.isEmpty()) return;
+		final String prefix = directory + "/";
+		for (final Entry<String, Location> entry : entries.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+			if (entry.getKey().endsWith(".json")) {
+				action.accept(info(entry.getKey(), entry.getValue()));
+			}
+		}
+	}
+
+	@Override
+	public ResourceInfo getInfo(final String name) {
+		final Location location = entries.get(name);
+		return location != null ? info(name, location) : null;
+	}
+
+	@Override
+	public Path getLocation() {
+		return snapshot.getLocation();
+	}
+
+	/**
+	 * Adds all files of a directory of the snapshot to the index
+	 *
+	 * @param path
+	 *            The directory
+	 */
+	private void indexSnapshot(final String path) {
+		for (final ResourceInfo info : snapshot.list(path)) {
+			if (info.isDirectory()) {
+				indexSnapshot(info.getPath());
+			} else {
+				entries.put(entryName(info), new Location(-1, (int) info.getSize(), info.getCrc()));
+			}
+		}
+	}
+
+	@Override
+	public List<ResourceInfo> list(final String path) {
+		final String directory = trim(path);
+		final String prefix = directory.isEmpty() ? "" : directory + "/";
+		final Map<String, ResourceInfo> result = new TreeMap<>();
+		for (final Entry<String, Location> entry : entries.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+			final String name = entry.getKey().substring(prefix.length());
+			final int end = name.indexOf('/');
+			if (end < 0) {
+				result.put(name, info(entry.getKey(), entry.getValue()));
+			} else {
+				final String child = name.substring(0, end);
+				result.computeIfAbsent(child, key -> new ResourceInfo(prefix + child + "/", child, -1, -1, true));
+			}
+		}
+		return new ArrayList<>(result.values());
+	}
+
+	/**
+	 * Acquires the read lock for the log, recording the time spent waiting for it
+	 */
+	private void lockForReading() {
+		if (!lock.readLock().tryLock()) {
+			final long start = System.nanoTime();
+			lock.readLock().lock();
+			ResourceMetrics.waitedForZipLock(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Acquires the write lock for the log, recording the time spent waiting for it
+	 */
+	private void lockForWriting() {
+		if (!lock.writeLock().tryLock()) {
+			final long start = System.nanoTime();
+			lock.writeLock().lock();
+			ResourceMetrics.waitedForZipLock(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public byte[] read(final String name) throws IOException {
+		lockForReading();
+		try {
+			final Location location = entries.get(name);
+			if (location == null) return null;
+			return location.offset < 0 ? snapshot.read(name) : readLog(location);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the content of an entry from the log
+	 *
+	 * @param location
+	 *            The location of the content in the log
+	 * @return The content
+	 * @throws IOException
+	 *             If the log could not be read
+	 */
+	private byte[] readLog(final Location location) throws IOException {
+		lockForReading();
+		try {
+			if (channel == null) throw new IOException("log is closed");
+			final ByteBuffer buffer = ByteBuffer.allocate(location.size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, location.offset + buffer.position()) < 0) throw new EOFException("unexpected end of log");
+			}
+			return buffer.array();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Indexes all intact records of the log and cuts off a damaged remainder, e.g. of a write that was interrupted by a
+	 * crash
+	 *
+	 * @throws IOException
+	 *             If the log could not be read
+	 */
+	private void replay() throws IOException {
+		long position = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+			for (byte[] record = RecoveryJournal.readRecord(in); record != null; record = RecoveryJournal.readRecord(in)) {
+				apply(record, position);
+				position += RECORD_HEADER + record.length;
+			}
+		}
+		if (position < channel.size()) {
+			channel.truncate(position);
+		}
+		logSize = position;
+	}
+
+	/**
+	 * Appends the changes to the log
+	 */
+	@Override
+	public void write(final Map<String, byte[]> changes) throws IOException {
+		if (changes.isEmpty()) return;
+		final long start = System.nanoTime();
+		final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(records);
+		final List<byte[]> encoded = new ArrayList<>(changes.size());
+		for (final Entry<String, byte[]> change : changes.entrySet()) {
+			final byte[] record = encode(change.getKey(), change.getValue());
+			RecoveryJournal.writeRecord(out, record);
+			encoded.add(record);
+		}
+		lockForWriting();
+		try {
+			if (channel == null) throw new IOException("log is closed");
+			final ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+			try {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, logSize + buffer.position());
+				}
+				channel.force(false);
+			} catch (final IOException e) {
+				try {
+					channel.truncate(logSize);
+				} catch (final IOException e1) {
+					e.addSuppressed(e1);
+				}
+				throw e;
+			}
+			long position = logSize;
+			for (final byte[] record : encoded) {
+				apply(record, position);
+				position += RECORD_HEADER + record.length;
+			}
+			logSize = position;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		ResourceMetrics.written(System.nanoTime() - start);
+		ResourceMetrics.saved();
+		compactIfNeeded();
+	}
+}
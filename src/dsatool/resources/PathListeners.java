@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Listeners for changes to paths, stored in a trie of the path prefixes they are registered for
+ *
+ * Notifications for a path only visit the nodes along that path. While a batch is running on a thread, notifications
+ * on that thread are collected and every affected listener is called once when the batch ends.
+ */
+final class PathListeners {
+
+	private static class Node {
+		private final Map<Character, Node> children = new HashMap<>(4);
+		private final List<Consumer<Boolean>> listeners = new ArrayList<>(1);
+	}
+
+	private final Node root = new Node();
+
+	/**
+	 * The listeners that were notified during the batch running on the current thread and whether any of those
+	 * notifications was for discarded changes
+	 */
+	private final ThreadLocal<Map<Consumer<Boolean>, Boolean>> pending = new ThreadLocal<>();
+
+	/**
+	 * Registers a listener for a path
+	 *
+	 * @param path
+	 *            The path that will be monitored
+	 * @param listener
+	 *            The listener that is executed on changes
+	 */
+	synchronized void add(final String path, final Consumer<Boolean> listener) {
+		Node node = root;
+		for (int i = 0; i < path.length(); ++i) {
+			node = node.children.computeIfAbsent(path.charAt(i), _ -> new Node());
+		}
+		node.listeners.add(listener);
+	}
+
+	/**
+	 * Runs an action and notifies every listener that was affected by it once afterwards
+	 *
+	 * Nested batches are merged into the outermost one.
+	 *
+	 * @param action
+	 *            The action to run
+	 */
+	void batch(final Runnable action) {
+		if (pending.get() != null) {
+			action.run();
+			return;
+		}
+		final Map<Consumer<Boolean>, Boolean> notifications = new LinkedHashMap<>();
+		pending.set(notifications);
+		try {
+			action.run();
+		} finally {
+			pending.remove();
+			for (final Entry<Consumer<Boolean>, Boolean> notification : notifications.entrySet()) {
+				call(notification.getKey(), notification.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Calls a listener and records the time it took
+	 *
+	 * @param listener
+	 *            The listener
+	 * @param discarded
+	 *            True, if all resources were discarded, false otherwise
+	 */
+	private void call(final Consumer<Boolean> listener, final boolean discarded) {
+		final long start = System.nanoTime();
+		listener.accept(discarded);
+		ResourceMetrics.notified(listener, System.nanoTime() - start);
+	}
+
+	/**
+	 * Notifies all listeners that are registered for any prefix of any of the given paths once
+	 *
+	 * @param paths
+	 *            The paths that were changed
+	 */
+	void changed(final Collection<String> paths) {
+		final Set<Consumer<Boolean>> listeners = new LinkedHashSet<>();
+		synchronized (this) {
+			for (final String path : paths) {
+				collect(path, listeners);
+			}
+		}
+		deliver(listeners, false);
+	}
+
+	/**
+	 * Notifies all listeners that are registered for any prefix of a path
+	 *
+	 * @param path
+	 *            The path that was changed
+	 */
+	void changed(final String path) {
+		final Set<Consumer<Boolean>> listeners = new LinkedHashSet<>();
+		synchronized (this) {
+			collect(path, listeners);
+		}
+		deliver(listeners, false);
+	}
+
+	/**
+	 * Notifies all listeners
+	 *
+	 * @param discarded
+	 *            True, if all resources were discarded, false otherwise
+	 */
+	void changedAll(final boolean discarded) {
+		final Set<Consumer<Boolean>> listeners = new LinkedHashSet<>();
+		synchronized (this) {
+			final Deque<Node> nodes = new ArrayDeque<>();
+			nodes.push(root);
+			while (!nodes.isEmpty()) {
+				final Node node = nodes.pop();
+				listeners.addAll(node.listeners);
+				nodes.addAll(node.children.values());
+			}
+		}
+		deliver(listeners, discarded);
+	}
+
+	private void collect(final String path, final Set<Consumer<Boolean>> result) {
+		Node node = root;
+		result.addAll(node.listeners);
+		for (int i = 0; i < path.length() && node != null; ++i) {
+			node = node.children.get(path.charAt(i));
+			if (node != null) {
+				result.addAll(node.listeners);
+			}
+		}
+	}
+
+	private void deliver(final Collection<Consumer<Boolean>> listeners, final boolean discarded) {
+		final Map<Consumer<Boolean>, Boolean> notifications = pending.get();
+		if (notifications != null) {
+			for (final Consumer<Boolean> listener : listeners) {
+				notifications.merge(listener, discarded, Boolean::logicalOr);
+			}
+		} else {
+			for (final Consumer<Boolean> listener : listeners) {
+				call(listener, discarded);
+			}
+		}
+	}
+
+	/**
+	 * Removes a listener for a path
+	 *
+	 * @param path
+	 *            The path that was previously monitored
+	 * @param listener
+	 *            The listener that is to be removed
+	 */
+	synchronized void remove(final String path, final Consumer<Boolean> listener) {
+		Node node = root;
+		for (int i = 0; i < path.length() && node != null; ++i) {
+			node = node.children.get(path.charAt(i));
+		}
+		if (node != null) {
+			node.listeners.remove(listener);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of changed resources that were not yet saved to the group archive
+ *
+ * Every record carries its own checksum, so a record that was only partially written when the application crashed is
+ * detected and ignored together with everything after it. Deleted entries are recorded without content, which a
+ * serialized resource never is, so earlier records do not bring them back.
+ */
+final class RecoveryJournal {
+
+	private static long checksum(final byte[] record) {
+		final CRC32 crc = new CRC32();
+		crc.update(record);
+		return crc.getValue();
+	}
+
+	/**
+	 * Reads the next record
+	 *
+	 * @param in
+	 *            The stream to read from
+	 * @return The content of the record or null, if the end was reached or the record is damaged
+	 * @throws IOException
+	 *             If the stream could not be read
+	 */
+	static byte[] readRecord(final DataInputStream in) throws IOException {
+		final int length;
+		final long checksum;
+		final byte[] record;
+		try {
+			length = in.readInt();
+			checksum = in.readLong();
+			if (length < 0) return null;
+			record = in.readNBytes(length);
+		} catch (final EOFException e) {
+			return null;
+		}
+		if (record.length != length || checksum(record) != checksum) return null;
+		return record;
+	}
+
+	/**
+	 * Writes a record together with its length and checksum
+	 *
+	 * @param out
+	 *            The stream to write to
+	 * @param record
+	 *            The content of the record
+	 * @throws IOException
+	 *             If the stream could not be written
+	 */
+	static void writeRecord(final DataOutputStream out, final byte[] record) throws IOException {
+		out.writeInt(record.length);
+		out.writeLong(checksum(record));
+		out.write(record);
+	}
+
+	private final Path file;
+
+	/**
+	 * Creates a journal
+	 *
+	 * @param file
+	 *            The file the journal is stored in
+	 */
+	RecoveryJournal(final Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Appends the content of changed entries to the journal
+	 *
+	 * @param changes
+	 *            The entry names and their current content, null for deleted entries
+	 * @throws IOException
+	 *             If the journal could not be written
+	 */
+	synchronized void append(final Map<String, byte[]> changes) throws IOException {
+		if (changes.isEmpty()) return;
+		final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(records);
+		final ByteArrayOutputStream record = new ByteArrayOutputStream();
+		final DataOutputStream recordOut = new DataOutputStream(record);
+		for (final Entry<String, byte[]> change : changes.entrySet()) {
+			record.reset();
+			recordOut.writeUTF(change.getKey());
+			if (change.getValue() != null) {
+				recordOut.write(change.getValue());
+			}
+			writeRecord(out, record.toByteArray());
+		}
+		try (OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND,
+				StandardOpenOption.DSYNC)) {
+			records.writeTo(stream);
+		}
+	}
+
+	/**
+	 * Removes the journal after its content was saved to the group archive
+	 *
+	 * @throws IOException
+	 *             If the journal could not be removed
+	 */
+	synchronized void clear() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Checks whether the journal contains any records
+	 *
+	 * @return True, if there are records to recover, false otherwise
+	 */
+	synchronized boolean isEmpty() {
+		try (InputStream in = Files.newInputStream(file)) {
+			return in.read() < 0;
+		} catch (final IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Reads all intact records of the journal
+	 *
+	 * @return The most recent content for every recorded entry name, in the order they were first recorded, null for
+	 *         deleted entries
+	 * @throws IOException
+	 *             If the journal could not be read
+	 */
+	synchronized Map<String, byte[]> read() throws IOException {
+		final Map<String, byte[]> result = new LinkedHashMap<>();
+		if (!Files.exists(file)) return result;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			for (byte[] record = readRecord(in); record != null; record = readRecord(in)) {
+				final DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+				final String name = recordIn.readUTF();
+				final byte[] content = recordIn.readAllBytes();
+				result.put(name, content.length > 0 ? content : null);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import dsatool.util.ErrorLogger;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+import jsonant.value.JSONValue;
+
+/**
+ * A cache of parsed resources in a compact binary format
+ *
+ * Each cache file starts with a key describing the files the resource was parsed from and the settings it was parsed
+ * with. A cache file is only used if its key matches, otherwise the resource has to be parsed again. Strings are stored
+ * once per file and referenced by index afterwards.
+ */
+final class ResourceCache {
+
+	/**
+	 * Identifies the cache format, has to be changed whenever the format changes
+	 */
+	private static final int MAGIC = 0x44534301;
+
+	private static final int NULL = 0;
+	private static final int TRUE = 1;
+	private static final int FALSE = 2;
+	private static final int LONG = 3;
+	private static final int DOUBLE = 4;
+	private static final int STRING = 5;
+	private static final int OBJECT = 6;
+	private static final int ARRAY = 7;
+
+	/**
+	 * Gets the directory for the cache files of an installation
+	 *
+	 * The installation directory may not be writable, so the cache is kept in the cache directory of the user. Every
+	 * installation has its own subdirectory there, so installations with different data don't replace each other's cache
+	 * files.
+	 *
+	 * @param appDir
+	 *            The directory the application is installed in
+	 * @return The directory for the cache files
+	 */
+	static Path getUserDirectory(final String appDir) {
+		final String osName = System.getProperty("os.name").toLowerCase();
+		final String home = System.getProperty("user.home");
+		Path base;
+		if (osName.contains("win") && System.getenv("LOCALAPPDATA") != null) {
+			base = Paths.get(System.getenv("LOCALAPPDATA"));
+		} else if (osName.contains("mac")) {
+			base = Paths.get(home, "Library", "Caches");
+		} else if (System.getenv("XDG_CACHE_HOME") != null) {
+			base = Paths.get(System.getenv("XDG_CACHE_HOME"));
+		} else {
+			base = Paths.get(home, ".cache");
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(appDir.getBytes(StandardCharsets.UTF_8));
+		return base.resolve("DSATool").resolve(Long.toHexString(crc.getValue()));
+	}
+
+	/**
+	 * Creates the key for a cached resource
+	 *
+	 * @param layers
+	 *            The existing files the resource is merged from and their content
+	 * @param discriminatingAttribute
+	 *            The discriminating attribute the resource is parsed with or null, if it is parsed without
+	 * @param priorities
+	 *            The priorities of the discriminating attribute
+	 * @return The key
+	 */
+	static byte[] key(final Map<FileIndex.Stat, byte[]> layers, final String discriminatingAttribute, final Collection<String> priorities) {
+		final ByteArrayOutputStream key = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(key)) {
+			out.writeUTF(discriminatingAttribute == null ? "" : discriminatingAttribute);
+			out.writeInt(priorities.size());
+			for (final String priority : priorities) {
+				out.writeUTF(priority);
+			}
+			for (final Entry<FileIndex.Stat, byte[]> layer : layers.entrySet()) {
+				final byte[] content = layer.getValue();
+				out.writeUTF(layer.getKey().name);
+				out.writeLong(content.length);
+				out.writeLong(layer.getKey().lastModified);
+				out.writeLong(ResourceManager.checksum(content));
+			}
+		} catch (final IOException e) {
+			// Can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return key.toByteArray();
+	}
+
+	private final Path directory;
+
+	/**
+	 * Is set once a cache file could not be written, e.g. because the directory is not writable, so the cache is not used
+	 * anymore
+	 */
+	private final AtomicBoolean disabled = new AtomicBoolean();
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param directory
+	 *            The directory the cache files are stored in
+	 */
+	ResourceCache(final Path directory) {
+		this.directory = directory;
+	}
+
+	private Path getFile(final String path) {
+		return directory.resolve(path + ".cache");
+	}
+
+	/**
+	 * Reads a resource from the cache
+	 *
+	 * @param path
+	 *            The path of the resource
+	 * @param key
+	 *            The key the cached resource has to match
+	 * @param discrimination
+	 *            The map the discriminating attributes of the cached objects are added to
+	 * @return The cached resource or null, if it is not cached or the cache is outdated
+	 */
+	JSONObject read(final String path, final byte[] key, final WeakIdentityMap<JSONObject, JSONObject> discrimination) {
+		if (disabled.get()) return null;
+		final Path file = getFile(path);
+		if (!Files.exists(file)) return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC) return null;
+			final byte[] cachedKey = new byte[in.readInt()];
+			in.readFully(cachedKey);
+			if (!Arrays.equals(key, cachedKey)) return null;
+			final Map<JSONObject, JSONObject> attributes = new IdentityHashMap<>();
+			final JSONObject result = readObject(in, new ArrayList<>(), null, attributes);
+			for (final Entry<JSONObject, JSONObject> attribute : attributes.entrySet()) {
+				discrimination.put(attribute.getKey(), attribute.getValue());
+			}
+			return result;
+		} catch (final IOException | RuntimeException e) {
+			// Treat broken cache files like outdated ones
+			return null;
+		}
+	}
+
+	private JSONArray readArray(final DataInputStream in, final List<String> strings, final JSONValue parent, final Map<JSONObject, JSONObject> discrimination)
+			throws IOException {
+		final int size = in.readInt();
+		final List<Object> values = new ArrayList<>(size);
+		final JSONArray result = new JSONArray(values, parent);
+		for (int i = 0; i < size; ++i) {
+			values.add(readValue(in, strings, result, discrimination));
+		}
+		return result;
+	}
+
+	private JSONObject readObject(final DataInputStream in, final List<String> strings, final JSONValue parent, final Map<JSONObject, JSONObject> discrimination)
+			throws IOException {
+		final int size = in.readInt();
+		final Map<String, Object> values = new LinkedHashMap<>((int) (size / 0.75f) + 1);
+		final JSONObject result = new JSONObject(values, parent);
+		if (in.readBoolean()) {
+			discrimination.put(result, readObject(in, strings, null, discrimination));
+		}
+		for (int i = 0; i < size; ++i) {
+			final String key = readString(in, strings);
+			values.put(key, readValue(in, strings, result, discrimination));
+		}
+		return result;
+	}
+
+	private String readString(final DataInputStream in, final List<String> strings) throws IOException {
+		final int index = in.readInt();
+		if (index >= 0) return strings.get(index);
+		final byte[] bytes = new byte[-index - 1];
+		in.readFully(bytes);
+		final String result = new String(bytes, StandardCharsets.UTF_8);
+		strings.add(result);
+		return result;
+	}
+
+	private Object readValue(final DataInputStream in, final List<String> strings, final JSONValue parent, final Map<JSONObject, JSONObject> discrimination)
+			throws IOException {
+		final int type = in.readByte();
+		return switch (type) {
+			case NULL -> null;
+			case TRUE -> true;
+			case FALSE -> false;
+			case LONG -> in.readLong();
+			case DOUBLE -> in.readDouble();
+			case STRING -> readString(in, strings);
+			case OBJECT -> readObject(in, strings, parent, discrimination);
+			case ARRAY -> readArray(in, strings, parent, discrimination);
+			default -> throw new IOException("Unknown value type " + type);
+		};
+	}
+
+	/**
+	 * Stores a resource in the cache
+	 *
+	 * If the resource cannot be stored, the error is logged and the cache is disabled, so the error is only logged once.
+	 *
+	 * @param path
+	 *            The path of the resource
+	 * @param key
+	 *            The key describing the files and settings the resource was parsed from
+	 * @param resource
+	 *            The resource to store
+	 * @param discrimination
+	 *            The discriminating attributes of the objects of the resource
+	 */
+	void write(final String path, final byte[] key, final JSONObject resource, final WeakIdentityMap<JSONObject, JSONObject> discrimination) {
+		if (disabled.get()) return;
+		final Path file = getFile(path);
+		try {
+			Files.createDirectories(file.getParent());
+			final Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString() + ".", ".tmp");
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+					out.writeInt(MAGIC);
+					out.writeInt(key.length);
+					out.write(key);
+					writeObject(out, new HashMap<>(), resource, discrimination);
+				}
+				GroupArchiveWriter.replace(temporary, file);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		} catch (final IOException e) {
+			if (disabled.compareAndSet(false, true)) {
+				ErrorLogger.logError(e);
+			}
+		}
+	}
+
+	private void writeArray(final DataOutputStream out, final Map<String, Integer> strings, final JSONArray array, final WeakIdentityMap<JSONObject, JSONObject> discrimination)
+			throws IOException {
+		final int size = array.size();
+		out.writeInt(size);
+		for (int i = 0; i < size; ++i) {
+			writeValue(out, strings, array.getUnsafe(i), discrimination);
+		}
+	}
+
+	private void writeObject(final DataOutputStream out, final Map<String, Integer> strings, final JSONObject object,
+			final WeakIdentityMap<JSONObject, JSONObject> discrimination) throws IOException {
+		out.writeInt(object.size());
+		final JSONObject attribute = discrimination.get(object);
+		out.writeBoolean(attribute != null);
+		if (attribute != null) {
+			writeObject(out, strings, attribute, discrimination);
+		}
+		for (final String key : object.keySet()) {
+			writeString(out, strings, key);
+			writeValue(out, strings, object.getUnsafe(key), discrimination);
+		}
+	}
+
+	private void writeString(final DataOutputStream out, final Map<String, Integer> strings, final String string) throws IOException {
+		final Integer index = strings.get(string);
+		if (index != null) {
+			out.writeInt(index);
+		} else {
+			final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(-bytes.length - 1);
+			out.write(bytes);
+			strings.put(string, strings.size());
+		}
+	}
+
+	private void writeValue(final DataOutputStream out, final Map<String, Integer> strings, final Object value, final WeakIdentityMap<JSONObject, JSONObject> discrimination)
+			throws IOException {
+		if (value instanceof final JSONObject obj) {
+			out.writeByte(OBJECT);
+			writeObject(out, strings, obj, discrimination);
+		} else if (value instanceof final JSONArray arr) {
+			out.writeByte(ARRAY);
+			writeArray(out, strings, arr, discrimination);
+		} else if (value instanceof final String str) {
+			out.writeByte(STRING);
+			writeString(out, strings, str);
+		} else if (value instanceof final Long l) {
+			out.writeByte(LONG);
+			out.writeLong(l);
+		} else if (value instanceof final Double d) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(d);
+		} else if (value instanceof final Boolean b) {
+			out.writeByte(b ? TRUE : FALSE);
+		} else if (value == null) {
+			out.writeByte(NULL);
+		} else {
+			throw new IOException("Unsupported value " + value.getClass().getName());
+		}
+	}
+}
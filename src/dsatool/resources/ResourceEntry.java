@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import dsatool.resources.ResourceManager.Source;
+import jsonant.event.JSONListener;
+import jsonant.value.JSONObject;
+
+/**
+ * The bookkeeping for a resource acquired by the ResourceManager
+ */
+final class ResourceEntry {
+	/**
+	 * The content of the resource
+	 */
+	final JSONObject resource;
+
+	/**
+	 * The layer the resource will be saved to
+	 */
+	final Source source;
+
+	/**
+	 * The CRC-32 of the last known persisted content of the resource or -1 if it was never persisted
+	 */
+	volatile long crc;
+
+	/**
+	 * The size of the last known persisted content of the resource in bytes or 0 if it was never persisted
+	 */
+	volatile long size;
+
+	/**
+	 * True, if the discriminating attribute was evaluated when the resource was parsed
+	 */
+	volatile boolean discriminated = true;
+
+	/**
+	 * The time of the last access to the resource as reported by {@link System#nanoTime()}
+	 */
+	volatile long lastAccess = System.nanoTime();
+
+	/**
+	 * True, if listeners reported a change since the resource was last persisted
+	 */
+	volatile boolean dirty;
+
+	/**
+	 * True, if the current state of the resource was written to the recovery journal
+	 */
+	volatile boolean journaled;
+
+	/**
+	 * The number of changes reported for the resource, used to tell whether it was changed after a snapshot of it was taken
+	 */
+	private long changes;
+
+	/**
+	 * Marks the resource as dirty whenever a change is reported for it or any of its children
+	 *
+	 * jsonant only holds weak references to listeners, so the entry has to keep it reachable.
+	 */
+	final JSONListener listener = _ -> {
+		synchronized (this) {
+			++changes;
+			dirty = true;
+			journaled = false;
+		}
+		ResourceManager.changed();
+	};
+
+	ResourceEntry(final JSONObject resource, final Source source, final long crc, final long size) {
+		this.resource = resource;
+		this.source = source;
+		this.crc = crc;
+		this.size = size;
+	}
+
+	/**
+	 * Gets the number of changes reported so far, which has to be taken before a snapshot of the resource is serialized
+	 *
+	 * @return The number of changes
+	 */
+	synchronized long getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Records that a snapshot of the resource was written to the recovery journal
+	 *
+	 * @param snapshot
+	 *            The number of changes when the snapshot was taken
+	 */
+	synchronized void journaled(final long snapshot) {
+		if (changes == snapshot) {
+			journaled = true;
+		}
+	}
+
+	/**
+	 * Records that a snapshot of the resource was persisted
+	 *
+	 * The resource stays dirty if changes were reported after the snapshot was taken.
+	 *
+	 * @param snapshot
+	 *            The number of changes when the snapshot was taken
+	 */
+	synchronized void saved(final long snapshot) {
+		if (changes == snapshot) {
+			dirty = false;
+		} else {
+			journaled = false;
+		}
+	}
+}
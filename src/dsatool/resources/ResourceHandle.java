@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.util.List;
+
+import jsonant.value.JSONObject;
+
+/**
+ * A reference to a resource that is only loaded when it is needed
+ */
+public class ResourceHandle extends ResourceInfo {
+
+	/**
+	 * @param path
+	 *            The path of the resource
+	 * @param name
+	 *            The file name
+	 * @param size
+	 *            The uncompressed size in bytes or -1 if unknown
+	 * @param crc
+	 *            The CRC-32 of the uncompressed content or -1 if unknown
+	 */
+	ResourceHandle(final String path, final String name, final long size, final long crc) {
+		super(path, name, size, crc, false);
+	}
+
+	/**
+	 * Gets the resource (will be acquired if necessary)
+	 *
+	 * @return The resource
+	 */
+	public JSONObject get() {
+		return ResourceManager.getResource(getPath());
+	}
+
+	/**
+	 * Checks whether the resource was already acquired
+	 *
+	 * @return True, if the resource is loaded, false otherwise
+	 */
+	public boolean isLoaded() {
+		return ResourceManager.isLoaded(getPath());
+	}
+
+	/**
+	 * Gets a copy of some top-level values of the resource without acquiring it
+	 *
+	 * If the resource is not loaded yet, all other top-level values are dropped while it is parsed, so only the
+	 * requested values are kept in memory.
+	 *
+	 * @param keys
+	 *            The keys of the requested values
+	 * @return A detached object containing the requested values that exist in the resource
+	 */
+	public JSONObject project(final String... keys) {
+		return ResourceManager.projectResource(getPath(), List.of(keys));
+	}
+}
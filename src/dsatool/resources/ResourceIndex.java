@@ -0,0 +1,402 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import jsonant.event.JSONListener;
+import jsonant.value.JSONArray;
+import jsonant.value.JSONObject;
+
+/**
+ * A secondary index of the values at an attribute path in the resources of a directory
+ *
+ * The attribute path consists of keys separated by slashes, where "*" stands for every key of an object or every element
+ * of an array. If the path ends with "*", the keys of the object are indexed, otherwise the values, and arrays at the end
+ * of the path are indexed by their elements. E.g. "Talente/*" in "characters/" finds the heroes with a talent and
+ * "Typ" the resources with a type.
+ *
+ * Lookups return the paths of the matching resources, which can be passed to {@link ResourceManager#getResource(String)}.
+ * The index is built when it is first queried and afterwards kept up to date by listeners on the indexed resources. Added,
+ * moved and removed resources are picked up with the next query.
+ *
+ * Queries can be made from any thread. The resources are loaded on the querying thread, while the index is built on the
+ * JavaFX application thread, where the resources are changed and their listeners are called. The lock of the index is
+ * only held while the indexed values are read or changed, so changes on the application thread don't wait for loading.
+ *
+ * The listeners of an index keep the indexed resources from being evicted, so every resource of an indexed directory
+ * stays in memory regardless of the memory budget. The indexes drop them when the group is switched or changes are
+ * discarded and only load them again with their next query.
+ */
+public final class ResourceIndex {
+
+	/**
+	 * An indexed resource
+	 */
+	private final class Indexed {
+		private final String path;
+
+		private final JSONObject resource;
+
+		/**
+		 * The values the resource is indexed by
+		 */
+		private Set<Object> values = Set.of();
+
+		/**
+		 * Reindexes the resource whenever a change is reported for it or any of its children
+		 *
+		 * jsonant only holds weak references to listeners, so the entry has to keep it reachable.
+		 */
+		private final JSONListener listener = _ -> update(this);
+
+		private Indexed(final String path, final JSONObject resource) {
+			this.path = path;
+			this.resource = resource;
+		}
+	}
+
+	private static final String WILDCARD = "*";
+
+	private static final Map<String, ResourceIndex> indexes = new ConcurrentHashMap<>();
+
+	/**
+	 * Orders indexed values, numbers by their value first, then booleans and strings
+	 */
+	private static final Comparator<Object> order = (first, second) -> {
+		final int rank = Integer.compare(rank(first), rank(second));
+		if (rank != 0) return rank;
+		return switch (first) {
+			case final Number number when isIntegral(number) && isIntegral((Number) second) -> Long.compare(number.longValue(),
+					((Number) second).longValue());
+			case final Number number -> Double.compare(number.doubleValue(), ((Number) second).doubleValue());
+			case final Boolean bool -> Boolean.compare(bool, (Boolean) second);
+			default -> first.toString().compareTo(second.toString());
+		};
+	};
+
+	/**
+	 * Drops the indexed resources of all indexes, so they can be collected
+	 *
+	 * Called when the group is switched or changes are discarded. The indexes stay valid and are built again with their
+	 * next query.
+	 */
+	static void discardAll() {
+		for (final ResourceIndex index : indexes.values()) {
+			index.discard();
+		}
+	}
+
+	/**
+	 * Gets the index of an attribute path in the resources of a directory
+	 *
+	 * Indexes are shared, so every attribute path is only indexed once per directory.
+	 *
+	 * @param directory
+	 *            The directory of the resources, e.g. "characters/"
+	 * @param attributePath
+	 *            The attribute path, e.g. "Talente/*"
+	 * @return The index
+	 */
+	public static ResourceIndex get(final String directory, final String attributePath) {
+		return indexes.computeIfAbsent(directory + '\n' + attributePath, _ -> new ResourceIndex(directory, attributePath));
+	}
+
+	private static boolean isIntegral(final Number number) {
+		return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+	}
+
+	private static boolean isValue(final Object value) {
+		return value instanceof Number || value instanceof Boolean || value instanceof String;
+	}
+
+	private static int rank(final Object value) {
+		if (value instanceof Number) return 0;
+		if (value instanceof Boolean) return 1;
+		if (value instanceof String) return 2;
+		return 3;
+	}
+
+	private final String directory;
+
+	private final String[] segments;
+
+	/**
+	 * The indexed resources by their paths
+	 */
+	private final Map<String, Indexed> resources = new HashMap<>();
+
+	/**
+	 * The ordered paths of the indexed resources by the values they are indexed by
+	 */
+	private final NavigableMap<Object, Set<String>> values = new TreeMap<>(order);
+
+	/**
+	 * Counts the additions, moves and removals of resources in the directory and the discards of the index
+	 */
+	private final AtomicInteger changes = new AtomicInteger();
+
+	/**
+	 * The number of changes the index was last synchronized with, it is stale if there were changes since
+	 */
+	private volatile int synchronizedChanges = -1;
+
+	/**
+	 * Marks the index as stale, it is only synchronized with the next query to keep path notifications cheap
+	 */
+	private final Consumer<Boolean> pathListener = _ -> changes.incrementAndGet();
+
+	private ResourceIndex(final String directory, final String attributePath) {
+		this.directory = directory;
+		segments = attributePath.split("/");
+		ResourceManager.addPathListener(directory, pathListener);
+	}
+
+	private void add(final Indexed indexed) {
+		resources.put(indexed.path, indexed);
+		ResourceManager.addListener(indexed.resource, indexed.listener);
+		update(indexed);
+	}
+
+	/**
+	 * Collects the values at the remaining attribute path
+	 *
+	 * @param value
+	 *            The value reached so far
+	 * @param depth
+	 *            The number of segments of the attribute path that were already followed
+	 * @param result
+	 *            The collected values
+	 */
+	private void collect(final Object value, final int depth, final Set<Object> result) {
+		if (depth == segments.length) {
+			if (value instanceof final JSONArray array) {
+				for (int i = 0; i < array.size(); ++i) {
+					if (isValue(array.getUnsafe(i))) {
+						result.add(array.getUnsafe(i));
+					}
+				}
+			} else if (isValue(value)) {
+				result.add(value);
+			}
+			return;
+		}
+		final String segment = segments[depth];
+		final boolean keys = depth == segments.length - 1 && WILDCARD.equals(segment);
+		if (value instanceof final JSONObject object) {
+			if (keys) {
+				result.addAll(object.keySet());
+			} else if (WILDCARD.equals(segment)) {
+				for (final String key : object.keySet()) {
+					collect(object.getUnsafe(key), depth + 1, result);
+				}
+			} else {
+				collect(object.getUnsafe(segment), depth + 1, result);
+			}
+		} else if (value instanceof final JSONArray array && WILDCARD.equals(segment)) {
+			for (int i = 0; i < array.size(); ++i) {
+				collect(array.getUnsafe(i), depth + 1, result);
+			}
+		}
+	}
+
+	/**
+	 * Drops all indexed resources and their values
+	 */
+	private synchronized void discard() {
+		for (final Indexed indexed : resources.values()) {
+			ResourceManager.removeListener(indexed.resource, indexed.listener);
+		}
+		resources.clear();
+		values.clear();
+		// Marks the index as stale and outdates the resources collected by running queries
+		synchronizedChanges = changes.getAndIncrement();
+	}
+
+	/**
+	 * Finds the resources that contain a value
+	 *
+	 * @param value
+	 *            The value to look for, numbers are compared by their value regardless of their type
+	 * @return The paths of the resources, ordered by path
+	 */
+	public List<String> find(final Object value) {
+		synchronize();
+		synchronized (this) {
+			final Set<String> result = values.get(value);
+			return result != null ? new ArrayList<>(result) : new ArrayList<>();
+		}
+	}
+
+	/**
+	 * Finds the resources that contain a string starting with a prefix
+	 *
+	 * @param prefix
+	 *            The prefix
+	 * @return The paths of the resources, ordered by path
+	 */
+	public List<String> findPrefix(final String prefix) {
+		synchronize();
+		synchronized (this) {
+			return paths(values.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values());
+		}
+	}
+
+	/**
+	 * Finds the resources that contain a value within a range
+	 *
+	 * @param from
+	 *            The lower bound (inclusive) or null for no lower bound
+	 * @param to
+	 *            The upper bound (exclusive) or null for no upper bound
+	 * @return The paths of the resources, ordered by path
+	 */
+	public List<String> findRange(final Object from, final Object to) {
+		synchronize();
+		synchronized (this) {
+			NavigableMap<Object, Set<String>> range = values;
+			if (from != null) {
+				range = range.tailMap(from, true);
+			}
+			if (to != null) {
+				range = range.headMap(to, false);
+			}
+			return paths(range.values());
+		}
+	}
+
+	/**
+	 * Gets all values that are indexed
+	 *
+	 * @return The distinct values in ascending order
+	 */
+	public List<Object> getValues() {
+		synchronize();
+		synchronized (this) {
+			return new ArrayList<>(values.keySet());
+		}
+	}
+
+	private List<String> paths(final Collection<Set<String>> matches) {
+		final Set<String> result = new TreeSet<>();
+		for (final Set<String> match : matches) {
+			result.addAll(match);
+		}
+		return new ArrayList<>(result);
+	}
+
+	private void remove(final Indexed indexed) {
+		ResourceManager.removeListener(indexed.resource, indexed.listener);
+		for (final Object value : indexed.values) {
+			unindex(value, indexed.path);
+		}
+	}
+
+	/**
+	 * Indexes resources that were added to the directory and removes those that were removed from it
+	 *
+	 * Resources are identified by their paths and instances, so moved resources and resources that were reloaded after
+	 * discarding changes are indexed again. The resources are loaded without holding the lock of the index, the index is
+	 * then changed on the application thread.
+	 */
+	private void synchronize() {
+		final int seen = changes.get();
+		if (seen == synchronizedChanges) return;
+		ResourceManager.preloadResources(directory);
+		final Map<String, JSONObject> current = new HashMap<>();
+		for (final ResourceHandle handle : ResourceManager.getAllResourceHandles(directory)) {
+			final JSONObject resource = handle.get();
+			if (resource != null) {
+				current.put(handle.getPath(), resource);
+			}
+		}
+		ResourceManager.onApplicationThread(() -> {
+			synchronize(current, seen);
+			return null;
+		});
+	}
+
+	/**
+	 * Changes the index to contain exactly the given resources
+	 *
+	 * Resources that were collected before the index was synchronized by another query or discarded are outdated and
+	 * ignored.
+	 *
+	 * @param current
+	 *            The resources currently in the directory by their paths
+	 * @param seen
+	 *            The number of changes before the resources were collected
+	 */
+	private synchronized void synchronize(final Map<String, JSONObject> current, final int seen) {
+		if (seen <= synchronizedChanges) return;
+		synchronizedChanges = seen;
+		for (final Iterator<Indexed> iterator = resources.values().iterator(); iterator.hasNext();) {
+			final Indexed indexed = iterator.next();
+			if (current.get(indexed.path) != indexed.resource) {
+				remove(indexed);
+				iterator.remove();
+			}
+		}
+		for (final Entry<String, JSONObject> resource : current.entrySet()) {
+			if (!resources.containsKey(resource.getKey())) {
+				add(new Indexed(resource.getKey(), resource.getValue()));
+			}
+		}
+	}
+
+	private void unindex(final Object value, final String path) {
+		final Set<String> paths = values.get(value);
+		paths.remove(path);
+		if (paths.isEmpty()) {
+			values.remove(value);
+		}
+	}
+
+	/**
+	 * Updates the values a resource is indexed by
+	 *
+	 * @param indexed
+	 *            The resource
+	 */
+	private synchronized void update(final Indexed indexed) {
+		if (resources.get(indexed.path) != indexed) return;
+		final Set<Object> current = new TreeSet<>(order);
+		collect(indexed.resource, 0, current);
+		for (final Object value : indexed.values) {
+			if (!current.contains(value)) {
+				unindex(value, indexed.path);
+			}
+		}
+		for (final Object value : current) {
+			values.computeIfAbsent(value, _ -> new TreeSet<>()).add(indexed.path);
+		}
+		indexed.values = current;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+/**
+ * Describes an entry of the group archive without loading its content
+ */
+public class ResourceInfo {
+	private final String path;
+	private final String name;
+	private final long size;
+	private final long crc;
+	private final boolean directory;
+
+	/**
+	 * @param path
+	 *            The path of the resource (without the .json extension for files, with a trailing / for directories)
+	 * @param name
+	 *            The file or directory name
+	 * @param size
+	 *            The uncompressed size in bytes or -1 if unknown
+	 * @param crc
+	 *            The CRC-32 of the uncompressed content or -1 if unknown
+	 * @param directory
+	 *            True, if the entry is a directory, false otherwise
+	 */
+	public ResourceInfo(final String path, final String name, final long size, final long crc, final boolean directory) {
+		this.path = path;
+		this.name = name;
+		this.size = size;
+		this.crc = crc;
+		this.directory = directory;
+	}
+
+	public long getCrc() {
+		return crc;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public boolean isDirectory() {
+		return directory;
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+}
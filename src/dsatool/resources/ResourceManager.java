@@ -17,43 +17,61 @@ package dsatool.resources;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.TreeMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
+import org.controlsfx.control.StatusBar;
+
+import dsatool.gui.Main;
 import dsatool.util.ErrorLogger;
 import dsatool.util.Tuple;
+import dsatool.util.Tuple3;
 import dsatool.util.Util;
+import javafx.application.Platform;
 import jsonant.event.ArrayParseEvent;
+import jsonant.event.JSONListener;
 import jsonant.event.ObjectParseEvent;
 import jsonant.event.ParseListener;
 import jsonant.parse.JSONParser;
-import jsonant.print.JSONPrinter;
 import jsonant.value.JSONArray;
 import jsonant.value.JSONObject;
+import jsonant.value.JSONValue;
 
 /**
  * A class managing textual resources for reuse. Clients can request resources to be loaded and then use them
@@ -65,53 +83,145 @@ public class ResourceManager {
 	/**
 	 * Source of the resource
 	 */
-	private enum Source {
+	enum Source {
 		GENERAL, MOD, ZIP;
 	}
 
 	/**
 	 * Maps resources to their location
 	 */
-	private static Map<JSONObject, String> paths = new IdentityHashMap<>();
+	private volatile static Map<JSONObject, String> paths = Collections.synchronizedMap(new IdentityHashMap<>());
 
 	/**
 	 * Contains all acquired resources
 	 */
-	private static Map<String, Tuple<JSONObject, Source>> resources = new HashMap<>();
+	private volatile static Map<String, ResourceEntry> resources = new ConcurrentHashMap<>();
+
+	/**
+	 * Contains resources that were evicted to stay within the memory budget, as long as they are still referenced
+	 * elsewhere
+	 */
+	private static Map<String, WeakReference<JSONObject>> evicted = new ConcurrentHashMap<>();
+
+	/**
+	 * The sum of the sizes of the persisted content of all acquired resources
+	 */
+	private static final AtomicLong residentSize = new AtomicLong();
+
+	/**
+	 * Ensures that only one thread evicts resources at a time
+	 */
+	private static final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * Is set while an eviction is scheduled on the application thread, so loading many resources only schedules one
+	 */
+	private static final AtomicBoolean evictionPending = new AtomicBoolean();
+
+	/**
+	 * Contains the roots of the values that listeners were registered for with {@link #addListener(JSONValue, JSONListener)}
+	 */
+	private static final WeakIdentityMap<JSONValue, List<WeakReference<JSONListener>>> pinned = new WeakIdentityMap<>();
 
 	/**
-	 * The zip file for the current group
+	 * The approximate ratio between the memory used by a parsed resource and the size of its serialized content
 	 */
-	private volatile static ZipFile zip;
+	private static final int HEAP_FACTOR = 8;
 
-	private volatile static ReentrantReadWriteLock zipLock = new ReentrantReadWriteLock();
+	/**
+	 * Contains the threads loading resources and the pending results, so concurrent requests for the same resource only
+	 * load it once
+	 */
+	private static final Map<String, Tuple<Thread, CompletableFuture<Boolean>>> loading = new ConcurrentHashMap<>();
+
+	/**
+	 * The storage of the current group
+	 */
+	private volatile static GroupStorage storage;
+
+	/**
+	 * Serializes all writes to the storage of the current group
+	 */
+	private static final ReentrantLock saveLock = new ReentrantLock();
 
 	/**
-	 * The path to the zip file
+	 * The transaction running on the current thread, if any
 	 */
-	private static File zipPath;
+	private static final ThreadLocal<ResourceTransaction> transaction = new ThreadLocal<>();
+
+	/**
+	 * The journal of changes to the current group that were not saved yet
+	 */
+	private volatile static RecoveryJournal journal;
+
+	/**
+	 * The time of the last change reported for any resource
+	 */
+	private volatile static long lastChange;
 
 	private static String discriminatingAttribute;
 
 	/**
 	 * A list of listeners for changes to specific paths
 	 */
-	private static Map<String, List<Consumer<Boolean>>> pathListeners = new HashMap<>();
+	private static final PathListeners pathListeners = new PathListeners();
+
+	/**
+	 * The latest progress of the current import, with the number of parsed files in the upper and the number of files to
+	 * import in the lower half
+	 */
+	private static final AtomicLong importProgress = new AtomicLong();
+
+	/**
+	 * Is set while an update of the shown import progress is scheduled, so only one update is scheduled at a time
+	 */
+	private static final AtomicBoolean importProgressPending = new AtomicBoolean();
 
 	private static Collection<String> priorities = new ArrayList<>();
 
-	private static final List<Function<JSONObject, JSONObject>> resourceSanitizers = new ArrayList<>();
+	private static final List<Function<JSONObject, JSONObject>> resourceSanitizers = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Maps the position of every priority to the priority
+	 */
+	private static volatile Map<String, Integer> priorityIndex = Map.of();
+
+	/**
+	 * The discriminating attributes of parsed objects
+	 *
+	 * The entries are removed once the objects are no longer used. The attributes are detached from the objects, so
+	 * they do not keep them reachable.
+	 */
+	private static final WeakIdentityMap<JSONObject, JSONObject> discriminatingAttributes = new WeakIdentityMap<>();
+
+	/**
+	 * Contains the merged general and mod layers of data resources, which are kept across group switches so only the
+	 * group layer has to be applied when they are acquired again
+	 */
+	private static final Map<String, BaseLayer> baseLayers = new ConcurrentHashMap<>();
+
+	/**
+	 * Indexes the files of the general and mod layers, so acquiring a resource does not have to probe the file system
+	 */
+	private static final FileIndex files = new FileIndex(Paths.get(Util.getAppDir()), List.of("data", "mod", "settings"));
 
-	private static final Map<JSONObject, JSONObject> discriminatingAttributes = new IdentityHashMap<>();
+	/**
+	 * Caches the parsed data files, which are large but rarely change
+	 */
+	private static final ResourceCache cache = new ResourceCache(ResourceCache.getUserDirectory(Util.getAppDir()));
 
-	private static final ParseListener discriminator = new ParseListener() {
+	/**
+	 * Moves the discriminating attribute of parsed objects to the discriminating attributes and drops objects with lower
+	 * priorities
+	 */
+	static final ParseListener discriminator = new ParseListener() {
 		@Override
 		public void handle(final ArrayParseEvent event) {
 			if (event.getValue() instanceof final JSONObject obj) {
 				final JSONObject attribute = obj.getObjOrDefault(discriminatingAttribute, null);
 				if (attribute != null) {
 					obj.removeKey(discriminatingAttribute);
-					discriminatingAttributes.put(obj, attribute);
+					discriminatingAttributes.put(obj, attribute.clone(null));
 				}
 			}
 		}
@@ -122,13 +232,13 @@ public class ResourceManager {
 				final JSONObject attribute = obj.getObjOrDefault(discriminatingAttribute, null);
 				if (attribute != null) {
 					obj.removeKey(discriminatingAttribute);
-					discriminatingAttributes.put(obj, attribute);
+					discriminatingAttributes.put(obj, attribute.clone(null));
 				}
 				final int prio = attribute != null ? getPrio(attribute) : Integer.MAX_VALUE - 1;
 				if (event.getObject().containsKey(event.getKey())) {
 					final Object other = event.getObject().getUnsafe(event.getKey());
-					if (other instanceof JSONObject) {
-						final JSONObject otherAttribute = discriminatingAttributes.get(other);
+					if (other instanceof final JSONObject otherObj) {
+						final JSONObject otherAttribute = discriminatingAttributes.get(otherObj);
 						final int otherPrio = otherAttribute != null ? getPrio(otherAttribute) : Integer.MAX_VALUE - 1;
 						if (otherPrio < prio) {
 							event.cancel();
@@ -144,6 +254,9 @@ public class ResourceManager {
 	/**
 	 * Requests a resource to be loaded for future use
 	 *
+	 * If another thread is loading the resource, this waits for it to finish. A thread requesting a resource it is loading
+	 * itself, e.g. from a resource sanitizer or a path listener, would wait for itself, so this fails instead.
+	 *
 	 * @param path
 	 *            The path to the resource
 	 * @param discriminate
@@ -154,60 +267,56 @@ public class ResourceManager {
 	 */
 	private static boolean acquireResource(final String path, final boolean discriminate, final boolean notifyPathListeners) {
 		if (resources.containsKey(path)) return true;
-		final JSONParser parser = new JSONParser(discriminate ? discriminator : null, ErrorLogger::logError);
-		final String jsonpath = path + ".json";
-		Source source = null;
-		JSONObject result = new JSONObject(null);
-		File file = new File(Util.getAppDir() + File.separator + jsonpath);
-		if (file.exists()) {
-			source = Source.GENERAL;
-			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
-				result = parser.parse(reader);
-			} catch (final IOException e) {
-				ErrorLogger.logError(e);
-				return false;
-			}
-		}
-		file = new File(Util.getAppDir() + "/mod/" + jsonpath);
-		if (file.exists()) {
-			source = Source.MOD;
-			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
-				final JSONObject mod = parser.parse(reader);
-				modifyResource(result, mod);
-			} catch (final IOException e) {
-				ErrorLogger.logError(e);
-				return false;
+		final CompletableFuture<Boolean> load = new CompletableFuture<>();
+		final Tuple<Thread, CompletableFuture<Boolean>> pending = loading.putIfAbsent(path, new Tuple<>(Thread.currentThread(), load));
+		if (pending != null) {
+			if (pending._1 == Thread.currentThread()) {
+				throw new IllegalStateException("Resource " + path + " was requested while it is loaded by the same thread");
 			}
+			return pending._2.join();
 		}
-		if (zip != null) {
-			zipLock.readLock().lock();
-			try {
-				final ZipEntry entry = zip.getEntry(jsonpath);
-				if (entry != null) {
-					source = Source.ZIP;
-					try (final BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), "UTF-8"))) {
-						final JSONObject mod = parser.parse(reader);
-						modifyResource(result, mod);
-					} catch (final IOException e) {
-						ErrorLogger.logError(e);
-						return false;
-					}
-				}
-			} finally {
-				zipLock.readLock().unlock();
+		boolean loaded = true;
+		try {
+			if (!resources.containsKey(path)) {
+				loaded = loadResource(path, discriminate);
+				ResourceMetrics.acquired(path);
 			}
+		} catch (final RuntimeException e) {
+			loading.remove(path);
+			load.completeExceptionally(e);
+			throw e;
 		}
-
-		for (final Function<JSONObject, JSONObject> sanitizer : resourceSanitizers) {
-			result = sanitizer.apply(result);
+		loading.remove(path);
+		load.complete(loaded);
+		if (notifyPathListeners) {
+			pathListeners.changed(path);
 		}
+		return loaded;
+	}
 
-		resources.put(path, new Tuple<>(result, source == null ? Source.ZIP : source));
-		paths.put(result, path);
-		if (notifyPathListeners) {
-			notifyPathListeners(path);
+	/**
+	 * Registers a listener for a resource or one of its values
+	 *
+	 * Resources with listeners registered this way are kept in memory until the listener is removed or garbage collected.
+	 * Listeners registered directly at the value do not keep the resource from being evicted, so changes to an evicted
+	 * resource would not reach them.
+	 *
+	 * @param value
+	 *            The value to listen to
+	 * @param listener
+	 *            The listener to register
+	 */
+	public static void addListener(final JSONValue value, final JSONListener listener) {
+		JSONListeners.add(value, listener);
+		final JSONValue root = getRoot(value);
+		synchronized (pinned) {
+			List<WeakReference<JSONListener>> listeners = pinned.get(root);
+			if (listeners == null) {
+				listeners = new ArrayList<>();
+				pinned.put(root, listeners);
+			}
+			listeners.add(new WeakReference<>(listener));
 		}
-		return source != null;
 	}
 
 	/**
@@ -219,16 +328,101 @@ public class ResourceManager {
 	 *            The listener that is executed on changes
 	 */
 	public static void addPathListener(final String path, final Consumer<Boolean> listener) {
-		if (!pathListeners.containsKey(path)) {
-			pathListeners.put(path, new ArrayList<>());
-		}
-		pathListeners.get(path).add(listener);
+		pathListeners.add(path, listener);
 	}
 
 	public static void addResourceSanitizer(final Function<JSONObject, JSONObject> sanitizer) {
 		resourceSanitizers.add(sanitizer);
 	}
 
+	/**
+	 * Runs an action and notifies every path listener that was affected by it once afterwards instead of once per
+	 * change
+	 *
+	 * @param action
+	 *            The action to run, e.g. a bulk import
+	 */
+	public static void batchPathNotifications(final Runnable action) {
+		pathListeners.batch(action);
+	}
+
+	/**
+	 * Records that a change to a resource was reported
+	 */
+	static void changed() {
+		lastChange = System.currentTimeMillis();
+	}
+
+	/**
+	 * Computes the CRC-32 of serialized content, as stored in zip entries
+	 *
+	 * @param content
+	 *            The content to compute the checksum for
+	 * @return The checksum
+	 */
+	static long checksum(final byte[] content) {
+		final CRC32 crc = new CRC32();
+		crc.update(content);
+		return crc.getValue();
+	}
+
+	/**
+	 * Writes the changes collected by a transaction to the storage of the current group as a single batch
+	 *
+	 * Has to be called while holding the save lock.
+	 *
+	 * @param current
+	 *            The transaction to commit
+	 * @return True, if the changes were written, false otherwise
+	 */
+	private static boolean commitTransaction(final ResourceTransaction current) {
+		if (current.changes.isEmpty()) return true;
+		final Map<String, byte[]> changes = new LinkedHashMap<>();
+		final Map<String, byte[]> deletions = new LinkedHashMap<>();
+		final List<Tuple3<ResourceEntry, byte[], Long>> written = new ArrayList<>();
+		for (final Entry<String, ResourceEntry> change : current.changes.entrySet()) {
+			final ResourceEntry entry = change.getValue();
+			if (entry == null) {
+				changes.put(change.getKey() + ".json", null);
+				deletions.put(change.getKey() + ".json", null);
+			} else {
+				final long snapshot = entry.getChanges();
+				final byte[] content = serialize(entry.resource);
+				changes.put(change.getKey() + ".json", content);
+				written.add(new Tuple3<>(entry, content, snapshot));
+			}
+		}
+		if (!writeGroup(changes)) return false;
+		for (final Tuple3<ResourceEntry, byte[], Long> change : written) {
+			persisted(change._1, change._2, change._3);
+		}
+		final RecoveryJournal recovery = journal;
+		if (recovery != null && !deletions.isEmpty() && !recovery.isEmpty()) {
+			// Earlier records of deleted and moved resources must not bring them back when the journal is recovered
+			try {
+				recovery.append(deletions);
+			} catch (final IOException e) {
+				ErrorLogger.logError(e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Assigns the discriminating attribute of an object to a copy of it
+	 *
+	 * @param original
+	 *            The original object
+	 * @param copy
+	 *            The copy
+	 */
+	static void copyDiscrimination(final JSONObject original, final JSONObject copy) {
+		final JSONObject attribute = discriminatingAttributes.get(original);
+		if (attribute != null) {
+			discriminatingAttributes.put(copy, attribute);
+		}
+	}
+
 	/**
 	 * Deletes the resource the given JSONObject was created from so it will not be loaded again
 	 *
@@ -250,74 +444,112 @@ public class ResourceManager {
 	 * @return true, if the resource was deleted, false otherwise
 	 */
 	private static boolean deleteResource(final JSONObject resource, final boolean notifyPathListeners) {
-		if (paths.containsKey(resource)) {
-			String path = paths.remove(resource);
-			final Source source = resources.remove(path)._2;
-			path += ".json";
-			if (source != Source.ZIP) {
-				if (notifyPathListeners) {
-					notifyPathListeners(path);
-				}
-				return false;
-			}
-			if (zip != null) {
-				zipLock.writeLock().lock();
-				try {
-					final ZipEntry entry = zip.getEntry(path);
-					if (entry != null) {
-						try {
-							zip.close();
-						} catch (final IOException e) {
-							ErrorLogger.logError(e);
-							return false;
-						}
-						try (final FileSystem zipFile = FileSystems.newFileSystem(zipPath.toPath())) {
-							Files.delete(zipFile.getPath("/" + path));
-							zipFile.close();
-							zip = new ZipFile(zipPath);
-							if (notifyPathListeners) {
-								notifyPathListeners(path);
-							}
-							return true;
-						} catch (final IOException e) {
-							ErrorLogger.logError(e);
-						}
-					} else {
-						if (notifyPathListeners) {
-							notifyPathListeners(path);
-						}
-					}
-				} finally {
-					zipLock.writeLock().unlock();
-				}
-			}
+		resurrectResource(resource);
+		final String path = paths.get(resource);
+		if (path == null) return false;
+		final ResourceTransaction current = transaction.get();
+		if (current == null) {
+			final boolean[] deleted = { false };
+			return runTransaction(() -> deleted[0] = deleteResource(resource, notifyPathListeners)) && deleted[0];
 		}
-		return false;
+		current.track(path, resources.get(path));
+		final Source source = unregister(path).source;
+		boolean deleted = false;
+		if (source == Source.ZIP) {
+			final GroupStorage group = storage;
+			deleted = current.delete(path, group != null && group.getInfo(path + ".json") != null);
+		}
+		if (notifyPathListeners) {
+			pathListeners.changed(path + ".json");
+		}
+		return deleted;
+	}
+
+	/**
+	 * Discards the parsed base layers of the data resources, so they are read from the cache or the files again
+	 *
+	 * Used by the benchmarks to measure loading without any state kept in memory.
+	 */
+	static void discardBaseLayers() {
+		baseLayers.clear();
 	}
 
 	/**
 	 * Discards all unsaved changes
+	 *
+	 * Secondary indexes release the discarded resources. The index of the files in the application directory is kept up to
+	 * date by the {@link ResourceWatcher}, so it is only scanned again if the watcher is not running, which also keeps the
+	 * merged base layers of unchanged data resources valid.
 	 */
 	public static void discardChanges() {
-		resources = new HashMap<>();
-		paths = new HashMap<>();
-		for (final List<Consumer<Boolean>> listeners : pathListeners.values()) {
-			for (final Consumer<Boolean> listener : listeners) {
-				listener.accept(true);
+		for (final ResourceEntry entry : resources.values()) {
+			JSONListeners.remove(entry.resource, entry.listener);
+		}
+		ResourceIndex.discardAll();
+		if (!ResourceWatcher.isRunning()) {
+			files.invalidate();
+		}
+		resources = new ConcurrentHashMap<>();
+		paths = Collections.synchronizedMap(new IdentityHashMap<>());
+		evicted = new ConcurrentHashMap<>();
+		residentSize.set(0);
+		final RecoveryJournal current = journal;
+		if (current != null) {
+			try {
+				current.clear();
+			} catch (final IOException e) {
+				ErrorLogger.logError(e);
 			}
 		}
+		pathListeners.changedAll(true);
 	}
 
 	/**
 	 * Discards all open resources
 	 */
 	public static void discardResources() {
-		if (zip != null) {
+		if (storage != null) {
 			saveResources();
 			discardChanges();
 		}
 	}
 
+	/**
+	 * Evicts the least recently used resources of the current group that can be reloaded from its storage until the
+	 * estimated memory used by all resources is within the configured budget
+	 *
+	 * Only resources without unsaved changes are evicted, and only if no listeners were registered for them or any of their
+	 * values with {@link #addListener(JSONValue, JSONListener)}, as changes to a resource that is still shown by a plugin
+	 * would otherwise go unnoticed. Runs on the application thread, where the resources and their listeners are changed.
+	 */
+	private static void evictResources() {
+		if (!evictionLock.tryLock()) return;
+		try {
+			final long budget = Settings.getSettingIntOrDefault(0, "Allgemein", "Speicherbudget") * 1024L * 1024L;
+			if (budget <= 0 || residentSize.get() * HEAP_FACTOR <= budget) return;
+			final List<Entry<String, ResourceEntry>> candidates = new ArrayList<>();
+			for (final Entry<String, ResourceEntry> entry : resources.entrySet()) {
+				final ResourceEntry resource = entry.getValue();
+				if (resource.source == Source.ZIP && !resource.dirty && resource.crc != -1 && !isPinned(resource.resource)) {
+					candidates.add(entry);
+				}
+			}
+			candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+			for (final Entry<String, ResourceEntry> candidate : candidates) {
+				if (residentSize.get() * HEAP_FACTOR <= budget) break;
+				final ResourceEntry entry = candidate.getValue();
+				if (resources.remove(candidate.getKey(), entry)) {
+					paths.remove(entry.resource);
+					JSONListeners.remove(entry.resource, entry.listener);
+					residentSize.addAndGet(-entry.size);
+					evicted.put(candidate.getKey(), new WeakReference<>(entry.resource));
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
 	/**
 	 * Gets all resources in a given directory
 	 *
@@ -326,36 +558,52 @@ public class ResourceManager {
 	 * @return A list of all resources in that directory
 	 */
 	public static List<JSONObject> getAllResources(final String path) {
+		preloadResources(path);
 		final Map<String, JSONObject> result = new TreeMap<>();
 		for (final String resourcePath : resources.keySet()) {
 			if (resourcePath.startsWith(path)) {
-				result.put(resourcePath.substring(resourcePath.lastIndexOf("/") + 1) + ".json", resources.get(resourcePath)._1);
+				result.put(resourcePath.substring(resourcePath.lastIndexOf("/") + 1) + ".json", resources.get(resourcePath).resource);
 			}
 		}
-		if (zip != null) {
-			zipLock.readLock().lock();
-			try {
-				final ZipEntry entry = zip.getEntry(path);
-				if (entry != null && entry.isDirectory()) {
-					final Enumeration<? extends ZipEntry> entries = zip.entries();
-					while (entries.hasMoreElements()) {
-						final ZipEntry current = entries.nextElement();
-						if (!current.isDirectory()) {
-							final Path currentPath = Paths.get(current.getName());
-							if (currentPath.startsWith(path)) {
-								result.put(currentPath.getFileName().toString(),
-										getResource(current.getName().substring(0, current.getName().lastIndexOf('.'))));
-							}
-						}
-					}
-				}
-			} finally {
-				zipLock.readLock().unlock();
+		final GroupStorage group = storage;
+		if (group != null) {
+			group.forEachFile(path, current -> result.put(current.getName(), getResource(current.getPath())));
+		}
+		return new ArrayList<>(result.values());
+	}
+
+	/**
+	 * Gets handles for all resources in a given directory without loading them
+	 *
+	 * @param path
+	 *            The path to the resources
+	 * @return Handles for all resources in that directory, ordered like the result of {@link #getAllResources(String)}
+	 */
+	public static List<ResourceHandle> getAllResourceHandles(final String path) {
+		final Map<String, ResourceHandle> result = new TreeMap<>();
+		for (final String resourcePath : resources.keySet()) {
+			if (resourcePath.startsWith(path)) {
+				final String name = resourcePath.substring(resourcePath.lastIndexOf("/") + 1) + ".json";
+				result.put(name, new ResourceHandle(resourcePath, name, -1, -1));
 			}
 		}
+		final GroupStorage group = storage;
+		if (group != null) {
+			group.forEachFile(path,
+					current -> result.put(current.getName(), new ResourceHandle(current.getPath(), current.getName(), current.getSize(), current.getCrc())));
+		}
 		return new ArrayList<>(result.values());
 	}
 
+	/**
+	 * Returns the time of the last change reported for any resource
+	 *
+	 * @return The time in milliseconds since the epoch or 0, if no change was reported yet
+	 */
+	static long getLastChange() {
+		return lastChange;
+	}
+
 	public static JSONObject getDiscrimination(final JSONObject data) {
 		return discriminatingAttributes.get(data);
 	}
@@ -388,21 +636,34 @@ public class ResourceManager {
 			}
 			foundFreeName = !acquireResource(path, true, notifyPathListeners);
 		}
-		return resources.get(path)._1;
+		final ResourceEntry entry = resources.get(path);
+		final ResourceTransaction current = transaction.get();
+		if (current != null) {
+			current.track(path, null);
+			current.put(path, entry);
+		}
+		return entry.resource;
 	}
 
 	private static int getPrio(final JSONObject value) {
-		int prio = 0;
-		for (final String entry : priorities) {
-			if (value.containsKey(entry)) return prio;
-			++prio;
+		final Map<String, Integer> index = priorityIndex;
+		int prio = Integer.MAX_VALUE;
+		for (final String key : value.keySet()) {
+			final Integer current = index.get(key);
+			if (current != null && current < prio) {
+				prio = current;
+			}
 		}
-		return Integer.MAX_VALUE;
+		return prio;
 	}
 
 	/**
 	 * Gets a resource (will be acquired if necessary)
 	 *
+	 * Changes to the resource have to be reported with {@link JSONValue#notifyListeners(jsonant.event.JSONListener)}.
+	 * Only reported changes mark the group as changed, are written to the recovery journal and trigger an automatic save.
+	 * Unreported changes are still found by comparing the content when saving.
+	 *
 	 * @param path
 	 *            The path to the resource
 	 * @return The resource
@@ -421,10 +682,141 @@ public class ResourceManager {
 	 * @return The resource
 	 */
 	static JSONObject getResource(final String path, final boolean discriminate) {
-		if (!resources.containsKey(path)) {
+		ResourceEntry entry = resources.get(path);
+		// The resource may have been evicted again before it could be returned
+		while (entry == null) {
 			acquireResource(path, discriminate, true);
+			entry = resources.get(path);
+		}
+		entry.lastAccess = System.nanoTime();
+		return entry.resource;
+	}
+
+	/**
+	 * Gets the root of a value
+	 *
+	 * @param value
+	 *            The value
+	 * @return The outermost value containing the value
+	 */
+	private static JSONValue getRoot(final JSONValue value) {
+		JSONValue root = value;
+		while (root.getParent() != null) {
+			root = root.getParent();
+		}
+		return root;
+	}
+
+	/**
+	 * Checks whether any resource was reported as changed since it was last saved
+	 *
+	 * @return True, if there are unsaved changes, false otherwise
+	 */
+	static boolean hasChanges() {
+		for (final ResourceEntry entry : resources.values()) {
+			if (entry.dirty) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the recovery journal of the current group contains changes that were not saved before the
+	 * application was closed
+	 *
+	 * @return True, if there are changes that can be recovered, false otherwise
+	 */
+	public static boolean hasRecoverableChanges() {
+		final RecoveryJournal current = journal;
+		return current != null && !current.isEmpty();
+	}
+
+	/**
+	 * Scans the files in the application directory again when the next resource is read, e.g. after the
+	 * {@link ResourceWatcher} lost track of some changes
+	 */
+	static void invalidateFiles() {
+		files.invalidate();
+	}
+
+	/**
+	 * Checks whether a resource was already acquired
+	 *
+	 * @param path
+	 *            The path to the resource
+	 * @return True, if the resource is loaded, false otherwise
+	 */
+	static boolean isLoaded(final String path) {
+		return resources.containsKey(path);
+	}
+
+	/**
+	 * Appends all resources of the current group that were reported as changed since they were last saved or journaled to
+	 * the recovery journal
+	 */
+	static void journalChanges() {
+		final RecoveryJournal current = journal;
+		if (current == null) return;
+		final List<Tuple<String, ResourceEntry>> changed = new ArrayList<>();
+		for (final Entry<String, ResourceEntry> entry : resources.entrySet()) {
+			final ResourceEntry resource = entry.getValue();
+			if (resource.source == Source.ZIP && resource.dirty && !resource.journaled && !entry.getKey().startsWith("data")) {
+				changed.add(new Tuple<>(entry.getKey() + ".json", resource));
+			}
+		}
+		if (changed.isEmpty()) return;
+		final List<Tuple<Long, byte[]>> contents = onApplicationThread(() -> {
+			final long start = System.nanoTime();
+			final List<Tuple<Long, byte[]>> result = changed.stream().map(entry -> {
+				final long snapshot = entry._2.getChanges();
+				return new Tuple<>(snapshot, serialize(entry._2.resource));
+			}).toList();
+			ResourceMetrics.journaled(System.nanoTime() - start);
+			return result;
+		});
+		final Map<String, byte[]> changes = new LinkedHashMap<>();
+		for (int i = 0; i < changed.size(); ++i) {
+			changes.put(changed.get(i)._1, contents.get(i)._2);
+		}
+		try {
+			current.append(changes);
+			for (int i = 0; i < changed.size(); ++i) {
+				changed.get(i)._2.journaled(contents.get(i)._1);
+			}
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+		}
+	}
+
+	/**
+	 * Checks whether listeners are registered for a resource or one of its values
+	 *
+	 * @param resource
+	 *            The resource
+	 * @return True, if the resource has listeners that are still reachable, false otherwise
+	 */
+	private static boolean isPinned(final JSONObject resource) {
+		synchronized (pinned) {
+			final List<WeakReference<JSONListener>> listeners = pinned.get(resource);
+			if (listeners == null) return false;
+			listeners.removeIf(reference -> reference.get() == null);
+			if (listeners.isEmpty()) {
+				pinned.remove(resource);
+				return false;
+			}
+			return true;
 		}
-		return resources.get(path)._1;
+	}
+
+	/**
+	 * Lists the files and directories directly contained in a directory of the group storage without parsing any of them
+	 *
+	 * @param path
+	 *            The path to the directory
+	 * @return Names, sizes and checksums of the entries in that directory as of the last save, ordered by name
+	 */
+	public static List<ResourceInfo> listResources(final String path) {
+		final GroupStorage group = storage;
+		return group != null ? group.list(path) : List.of();
 	}
 
 	/**
@@ -442,10 +834,14 @@ public class ResourceManager {
 				final JSONObject tmp = getNewResource(makeValidFile(internalPath), false);
 				final String tmpPath = paths.get(tmp);
 				final JSONObject result = new JSONParser(discriminator, ErrorLogger::logError).parse(reader);
-				resources.put(tmpPath, new Tuple<>(result, Source.ZIP));
-				paths.put(result, tmpPath);
-				paths.remove(tmp);
-				notifyPathListeners(tmpPath);
+				unregister(tmpPath);
+				final ResourceEntry entry = new ResourceEntry(result, Source.ZIP, -1, 0);
+				register(tmpPath, entry);
+				final ResourceTransaction current = transaction.get();
+				if (current != null) {
+					current.put(tmpPath, entry);
+				}
+				pathListeners.changed(tmpPath);
 				return result;
 			} catch (final IOException e) {
 				ErrorLogger.logError(e);
@@ -455,15 +851,94 @@ public class ResourceManager {
 	}
 
 	/**
-	 * Replaces bad characters in the file name part of a path
+	 * Loads many external files at once and stores their content to new resources
 	 *
-	 * @param name
-	 *            The name of the file that is requested
-	 * @return A cleaned up version of the name
+	 * The files are parsed in parallel while the progress is shown in the status bar. Names are allocated in memory like
+	 * {@link #getNewResource(String)} would. All resources are registered and written to the group archive in a single
+	 * transaction, so path listeners are notified once.
+	 *
+	 * @param externalFiles
+	 *            The external files to load and the paths the resources should be located at
+	 * @return The JSONObjects that contain the content of the files that could be loaded, in the order of the files, or an
+	 *         empty list, if the resources could not be written
 	 */
-	private static String makeValidFile(final String name) {
-		final int pathEnd = name.lastIndexOf('/') + 1;
-		final String path = name.substring(0, pathEnd);
+	public static List<JSONObject> loadExternalResources(final Map<File, String> externalFiles) {
+		final List<Entry<File, String>> imports = new ArrayList<>(externalFiles.entrySet());
+		final int total = imports.size();
+		final int step = Math.max(1, total / 100);
+		final AtomicInteger done = new AtomicInteger();
+		final JSONObject[] parsed = new JSONObject[total];
+		IntStream.range(0, total).parallel().forEach(i -> {
+			try (BufferedReader reader = Files.newBufferedReader(imports.get(i).getKey().toPath(), StandardCharsets.UTF_8)) {
+				parsed[i] = new JSONParser(discriminator, ErrorLogger::logError).parse(reader);
+			} catch (final IOException e) {
+				ErrorLogger.logError(e);
+			}
+			final int current = done.incrementAndGet();
+			if (current % step == 0 && current < total) {
+				showImportProgress(current, total);
+			}
+		});
+		final List<JSONObject> result = new ArrayList<>(total);
+		final boolean committed = runTransaction(() -> {
+			final ResourceTransaction current = transaction.get();
+			final GroupStorage group = storage;
+			final List<String> imported = new ArrayList<>(total);
+			for (int i = 0; i < total; ++i) {
+				if (parsed[i] == null) {
+					continue;
+				}
+				String path = makeValidFile(imports.get(i).getValue());
+				while (resources.containsKey(path) || evicted.containsKey(path) || group != null && group.getInfo(path + ".json") != null
+						|| files.get(path + ".json") != null || files.get("mod/" + path + ".json") != null) {
+					path = path + '_';
+				}
+				final ResourceEntry entry = new ResourceEntry(parsed[i], Source.ZIP, -1, 0);
+				current.track(path, null);
+				register(path, entry);
+				current.put(path, entry);
+				imported.add(path);
+				result.add(parsed[i]);
+			}
+			pathListeners.changed(imported);
+		});
+		showImportProgress(total, total);
+		return committed ? result : List.of();
+	}
+
+	/**
+	 * Loads and registers a resource
+	 *
+	 * Only one thread loads a specific resource at a time.
+	 *
+	 * @param path
+	 *            The path to the resource
+	 * @param discriminate
+	 *            True, if the discriminating attribute is to be evaluated, false otherwise
+	 * @return True, if the resource was loaded, false if it was newly created
+	 */
+	private static boolean loadResource(final String path, final boolean discriminate) {
+		if (resurrectResource(path)) return true;
+		final ResourceEntry entry = readResource(path, discriminate);
+		if (entry == null) return false;
+		register(path, entry);
+		if (entry.source == Source.ZIP) {
+			requestEviction();
+		}
+		// Only newly created resources have no persisted content
+		return entry.crc != -1;
+	}
+
+	/**
+	 * Replaces bad characters in the file name part of a path
+	 *
+	 * @param name
+	 *            The name of the file that is requested
+	 * @return A cleaned up version of the name
+	 */
+	private static String makeValidFile(final String name) {
+		final int pathEnd = name.lastIndexOf('/') + 1;
+		final String path = name.substring(0, pathEnd);
 		final String fileName = name.substring(pathEnd);
 		return path + fileName.replaceAll("[^\\w-]", "_");
 	}
@@ -476,17 +951,17 @@ public class ResourceManager {
 	 * @param modification
 	 *            The modifications to apply
 	 */
-	private static void modifyResource(final JSONObject resource, final JSONObject modification) {
+	static void modifyResource(final JSONObject resource, final JSONObject modification) {
 		for (final String key : modification.keySet()) {
 			final Object value = modification.getUnsafe(key);
 			if (value instanceof final JSONObject obj) {
 				if (resource.containsKey(key)) {
 					modifyResource(resource.getObj(key), obj);
 				} else {
-					resource.put(key, obj.clone(resource));
+					resource.put(key, CopyOnAccessMap.copy(obj, resource));
 				}
 			} else if (value instanceof final JSONArray arr) {
-				resource.put(key, arr.clone(resource));
+				resource.put(key, CopyOnAccessMap.copy(arr, resource));
 			} else if (value instanceof final Double d) {
 				resource.put(key, d);
 			} else if (value instanceof final Long l) {
@@ -510,63 +985,410 @@ public class ResourceManager {
 	 *            The name of the file that is requested
 	 */
 	public static void moveResource(final JSONObject resource, final String newName) {
+		resurrectResource(resource);
 		if (newName.equals(paths.get(resource))) return;
+		final ResourceTransaction current = transaction.get();
+		if (current == null) {
+			runTransaction(() -> moveResource(resource, newName));
+			return;
+		}
 		deleteResource(resource, false);
 		final JSONObject tmp = getNewResource(makeValidFile(newName), false);
-		String path = paths.get(tmp);
-		resources.put(path, new Tuple<>(resource, Source.ZIP));
-		paths.put(resource, path);
-		paths.remove(tmp);
-		notifyPathListeners(path);
-		zipLock.writeLock().lock();
+		final String path = paths.get(tmp);
+		unregister(path);
+		final ResourceEntry entry = new ResourceEntry(resource, Source.ZIP, -1, 0);
+		register(path, entry);
+		current.put(path, entry);
+		pathListeners.changed(path);
+	}
+
+	/**
+	 * Runs an action on the JavaFX application thread and waits for its result
+	 *
+	 * Resources are changed on the application thread, so they cannot change while an action running there takes a
+	 * snapshot of them. If the JavaFX toolkit is not running, e.g. in the benchmarks, the action runs on the calling thread.
+	 * Must not be called while holding a lock the application thread might wait for.
+	 *
+	 * @param action
+	 *            The action to run
+	 * @return The result of the action
+	 */
+	static <T> T onApplicationThread(final Supplier<T> action) {
+		if (Platform.isFxApplicationThread()) return action.get();
+		final CompletableFuture<T> result = new CompletableFuture<>();
 		try {
-			if (zip != null) {
+			Platform.runLater(() -> {
 				try {
-					zip.close();
-				} catch (final IOException e) {
-					ErrorLogger.logError(e);
-					return;
+					result.complete(action.get());
+				} catch (final RuntimeException e) {
+					result.completeExceptionally(e);
 				}
+			});
+		} catch (final IllegalStateException e) {
+			return action.get();
+		}
+		return result.join();
+	}
+
+	/**
+	 * Records that a resource was written
+	 *
+	 * @param entry
+	 *            The bookkeeping for the resource
+	 * @param content
+	 *            The content that was written
+	 * @param snapshot
+	 *            The number of changes reported for the resource when the content was serialized
+	 */
+	private static void persisted(final ResourceEntry entry, final byte[] content, final long snapshot) {
+		entry.crc = checksum(content);
+		residentSize.addAndGet(content.length - entry.size);
+		entry.size = content.length;
+		entry.saved(snapshot);
+	}
+
+	/**
+	 * Loads all resources in a directory of the group storage that were not acquired yet
+	 *
+	 * The resources are read and parsed in parallel, but registered on the calling thread afterwards, as jsonant does not
+	 * synchronize the registration of listeners. Path listeners are notified once for all of them.
+	 *
+	 * @param path
+	 *            The path to the directory
+	 */
+	public static void preloadResources(final String path) {
+		final GroupStorage group = storage;
+		if (group == null) return;
+		final List<String> missing = new ArrayList<>();
+		group.forEachFile(path, entry -> {
+			if (!resources.containsKey(entry.getPath())) {
+				missing.add(entry.getPath());
+			}
+		});
+		if (missing.isEmpty()) return;
+		final List<Tuple<String, CompletableFuture<Boolean>>> loads = new ArrayList<>();
+		for (final String resourcePath : missing) {
+			final CompletableFuture<Boolean> load = new CompletableFuture<>();
+			if (loading.putIfAbsent(resourcePath, new Tuple<>(Thread.currentThread(), load)) != null) {
+				continue;
 			}
-			try (final FileSystem zipFile = FileSystems.newFileSystem(zipPath.toPath())) {
-				path += ".json";
-				final Path p = zipFile.getPath("/" + path);
-				final Path parent = p.getParent();
-				if (parent != null) {
-					Files.createDirectories(parent);
+			if (resources.containsKey(resourcePath) || resurrectResource(resourcePath)) {
+				loading.remove(resourcePath);
+				load.complete(true);
+			} else {
+				loads.add(new Tuple<>(resourcePath, load));
+			}
+		}
+		final ResourceEntry[] entries = new ResourceEntry[loads.size()];
+		try {
+			IntStream.range(0, loads.size()).parallel().forEach(i -> entries[i] = readResource(loads.get(i)._1, true));
+		} catch (final RuntimeException e) {
+			for (final Tuple<String, CompletableFuture<Boolean>> load : loads) {
+				loading.remove(load._1);
+				load._2.completeExceptionally(e);
+			}
+			throw e;
+		}
+		for (int i = 0; i < entries.length; ++i) {
+			final String resourcePath = loads.get(i)._1;
+			if (entries[i] != null) {
+				register(resourcePath, entries[i]);
+				ResourceMetrics.acquired(resourcePath);
+			}
+			loading.remove(resourcePath);
+			loads.get(i)._2.complete(entries[i] != null && entries[i].crc != -1);
+		}
+		requestEviction();
+		pathListeners.changed(missing);
+	}
+
+	/**
+	 * Copies some top-level values of a resource
+	 *
+	 * Resources that were not acquired yet are read from the group storage without acquiring them, dropping all other
+	 * top-level values while parsing.
+	 *
+	 * @param path
+	 *            The path to the resource
+	 * @param keys
+	 *            The keys of the requested values
+	 * @return A detached object containing the requested values that exist in the resource
+	 */
+	static JSONObject projectResource(final String path, final Collection<String> keys) {
+		JSONObject resource = null;
+		final ResourceEntry entry = resources.get(path);
+		if (entry != null) {
+			resource = entry.resource;
+		} else {
+			try {
+				final byte[] content = readGroupEntry(path + ".json");
+				if (content != null) {
+					final ParseListener projection = new ParseListener() {
+						@Override
+						public void handle(final ArrayParseEvent event) {}
+
+						@Override
+						public void handle(final ObjectParseEvent event) {
+							if (event.getObject().getParent() == null && !keys.contains(event.getKey())) {
+								event.cancel();
+							}
+						}
+					};
+					return new JSONParser(projection, ErrorLogger::logError).parse(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)));
 				}
-				try (final BufferedWriter zipwriter = Files.newBufferedWriter(p, StandardOpenOption.CREATE)) {
-					JSONPrinter.print(zipwriter, resource);
-				} catch (final IOException e) {
-					ErrorLogger.logError(e);
+			} catch (final IOException e) {
+				ErrorLogger.logError(e);
+			}
+			resource = getResource(path);
+		}
+		final JSONObject result = new JSONObject(null);
+		for (final String key : keys) {
+			final Object value = resource.getUnsafe(key);
+			if (value instanceof final JSONObject obj) {
+				result.put(key, obj.clone(result));
+			} else if (value instanceof final JSONArray arr) {
+				result.put(key, arr.clone(result));
+			} else if (value instanceof final Double d) {
+				result.put(key, d);
+			} else if (value instanceof final Long l) {
+				result.put(key, l);
+			} else if (value instanceof final Boolean b) {
+				result.put(key, b);
+			} else if (value instanceof final String str) {
+				result.put(key, str);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the content of an entry of the storage of the current group
+	 *
+	 * @param name
+	 *            The name of the entry
+	 * @return The content of the entry or null, if there is no such entry
+	 * @throws IOException
+	 *             If the entry could not be read
+	 */
+	private static byte[] readGroupEntry(final String name) throws IOException {
+		final GroupStorage group = storage;
+		return group != null ? group.read(name) : null;
+	}
+
+	/**
+	 * Reads a resource from all its layers without registering it
+	 *
+	 * @param path
+	 *            The path to the resource
+	 * @param discriminate
+	 *            True, if the discriminating attribute is to be evaluated, false otherwise
+	 * @return The bookkeeping for the resource, which has no persisted content if the resource does not exist yet, or
+	 *         null, if it could not be read
+	 */
+	private static ResourceEntry readResource(final String path, final boolean discriminate) {
+		final JSONParser parser = new JSONParser(discriminate ? discriminator : null, ErrorLogger::logError);
+		final String jsonpath = path + ".json";
+		Source source = null;
+		long crc = -1;
+		long size = 0;
+		JSONObject result = null;
+		final FileIndex.Stat generalFile = files.get(jsonpath);
+		final FileIndex.Stat modFile = files.get("mod/" + jsonpath);
+		byte[] baseKey = null;
+		BaseLayer base = null;
+		if (path.startsWith("data")) {
+			baseKey = BaseLayer.key(Arrays.asList(generalFile, modFile), discriminate ? discriminatingAttribute : null, priorities);
+			base = baseLayers.get(path);
+			if (base != null && !Arrays.equals(base.key, baseKey)) {
+				base = null;
+			}
+		}
+		if (base != null) {
+			source = base.source;
+			crc = base.crc;
+			size = base.size;
+			result = CopyOnAccessMap.copy(base.resource, null);
+		} else {
+			final Map<FileIndex.Stat, byte[]> layers = new LinkedHashMap<>();
+			for (final FileIndex.Stat layer : Arrays.asList(generalFile, modFile)) {
+				if (layer != null) {
+					source = layer == modFile ? Source.MOD : Source.GENERAL;
+					try {
+						final byte[] content = Files.readAllBytes(layer.file);
+						ResourceMetrics.read(source, content.length);
+						crc = checksum(content);
+						size = content.length;
+						layers.put(layer, content);
+					} catch (final IOException e) {
+						ErrorLogger.logError(e);
+						return null;
+					}
+				}
+			}
+			byte[] cacheKey = null;
+			if (source != null && path.startsWith("data")) {
+				cacheKey = ResourceCache.key(layers, discriminate ? discriminatingAttribute : null, priorities);
+				result = cache.read(path, cacheKey, discriminatingAttributes);
+			}
+			if (result == null) {
+				result = new JSONObject(null);
+				for (final Entry<FileIndex.Stat, byte[]> layer : layers.entrySet()) {
+					try {
+						final long start = System.nanoTime();
+						final JSONObject parsed = parser.parse(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(layer.getValue()), StandardCharsets.UTF_8)));
+						ResourceMetrics.parsed(layer.getKey() == modFile ? Source.MOD : Source.GENERAL, System.nanoTime() - start);
+						if (layer.getKey() == generalFile) {
+							result = parsed;
+						} else {
+							modifyResource(result, parsed);
+						}
+					} catch (final IOException e) {
+						ErrorLogger.logError(e);
+						return null;
+					}
+				}
+				if (cacheKey != null) {
+					cache.write(path, cacheKey, result, discriminatingAttributes);
+				}
+			}
+			if (baseKey != null && source != null) {
+				baseLayers.put(path, new BaseLayer(baseKey, result, source, crc, size));
+				result = CopyOnAccessMap.copy(result, null);
+			}
+		}
+		try {
+			final byte[] content = readGroupEntry(jsonpath);
+			if (content != null) {
+				source = Source.ZIP;
+				crc = checksum(content);
+				size = content.length;
+				ResourceMetrics.read(Source.ZIP, content.length);
+				final long start = System.nanoTime();
+				final JSONObject mod = parser.parse(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)));
+				ResourceMetrics.parsed(Source.ZIP, System.nanoTime() - start);
+				modifyResource(result, mod);
+			}
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+			return null;
+		}
+
+		for (final Function<JSONObject, JSONObject> sanitizer : resourceSanitizers) {
+			final long start = System.nanoTime();
+			result = sanitizer.apply(result);
+			ResourceMetrics.sanitized(sanitizer, System.nanoTime() - start);
+		}
+
+		final ResourceEntry entry = new ResourceEntry(result, source == null ? Source.ZIP : source, crc, size);
+		entry.discriminated = discriminate;
+		return entry;
+	}
+
+	/**
+	 * Applies or discards the changes recorded in the recovery journal of the current group
+	 *
+	 * @param apply
+	 *            True, if the recorded changes are to be saved to the group, false if they are to be discarded
+	 */
+	public static void recoverChanges(final boolean apply) {
+		final RecoveryJournal current = journal;
+		if (current == null) return;
+		if (apply) {
+			saveLock.lock();
+			try {
+				if (writeGroup(current.read())) {
+					discardChanges();
 				}
 			} catch (final IOException e) {
 				ErrorLogger.logError(e);
+			} finally {
+				saveLock.unlock();
 			}
+		} else {
 			try {
-				zip = new ZipFile(zipPath);
-			} catch (final ZipException e) {
-				// This can happen if the zip is empty, just ignore it
-				zip = null;
+				current.clear();
 			} catch (final IOException e) {
 				ErrorLogger.logError(e);
 			}
-		} finally {
-			zipLock.writeLock().unlock();
 		}
 	}
 
 	/**
-	 * Notifies all listeners that are registered for any prefix of a path
+	 * Registers an acquired resource and starts tracking changes to it
+	 *
+	 * @param path
+	 *            The path of the resource
+	 * @param entry
+	 *            The bookkeeping for the resource
+	 */
+	private static void register(final String path, final ResourceEntry entry) {
+		resources.put(path, entry);
+		paths.put(entry.resource, path);
+		JSONListeners.add(entry.resource, entry.listener);
+		residentSize.addAndGet(entry.size);
+	}
+
+	/**
+	 * Reads a loaded resource again and merges the new content into it
+	 *
+	 * Resources with unsaved changes that would be written over the changed files are kept as they are.
 	 *
 	 * @param path
-	 *            The path that was changed
+	 *            The path to the resource
+	 * @return True, if the content of the resource changed, false otherwise
+	 */
+	private static boolean reloadResource(final String path) {
+		final ResourceEntry entry = resources.get(path);
+		if (entry == null || entry.dirty && (entry.source == Source.ZIP || path.startsWith("settings"))) return false;
+		final ResourceEntry reloaded = readResource(path, entry.discriminated);
+		if (reloaded == null) return false;
+		final boolean changed = replaceContent(entry.resource, reloaded.resource);
+		final ResourceEntry replacement = new ResourceEntry(entry.resource, reloaded.source, reloaded.crc, reloaded.size);
+		replacement.discriminated = entry.discriminated;
+		replacement.lastAccess = entry.lastAccess;
+		unregister(path);
+		register(path, replacement);
+		return changed;
+	}
+
+	/**
+	 * Reads loaded resources again after their files were changed outside of the application and merges the new content
+	 * into them
+	 *
+	 * Only the listeners of objects whose values changed and the path listeners of resources that changed are notified.
+	 *
+	 * @param paths
+	 *            The paths to the resources, paths of resources that are not loaded are ignored
 	 */
-	private static void notifyPathListeners(final String path) {
-		for (final String listenerPath : pathListeners.keySet()) {
-			if (path.startsWith(listenerPath)) {
-				for (final Consumer<Boolean> listener : pathListeners.get(listenerPath)) {
-					listener.accept(false);
+	static void reloadResources(final Collection<String> paths) {
+		pathListeners.batch(() -> {
+			for (final String path : paths) {
+				files.refresh(path + ".json");
+				files.refresh("mod/" + path + ".json");
+				if (reloadResource(path)) {
+					pathListeners.changed(path);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Removes a listener that was registered with {@link #addListener(JSONValue, JSONListener)}
+	 *
+	 * @param value
+	 *            The value the listener was registered for
+	 * @param listener
+	 *            The listener to remove
+	 */
+	public static void removeListener(final JSONValue value, final JSONListener listener) {
+		JSONListeners.remove(value, listener);
+		final JSONValue root = getRoot(value);
+		synchronized (pinned) {
+			final List<WeakReference<JSONListener>> listeners = pinned.get(root);
+			if (listeners != null) {
+				listeners.removeIf(reference -> reference.get() == null || reference.get() == listener);
+				if (listeners.isEmpty()) {
+					pinned.remove(root);
 				}
 			}
 		}
@@ -581,10 +1403,184 @@ public class ResourceManager {
 	 *            The listener that is to be removed
 	 */
 	public static void removePathListener(final String path, final Consumer<Boolean> listener) {
-		final List<Consumer<Boolean>> listeners = pathListeners.get(path);
-		if (listeners != null) {
-			listeners.remove(listener);
+		pathListeners.remove(path, listener);
+	}
+
+	/**
+	 * Replaces the content of an object with the content of a newer version of it
+	 *
+	 * Nested objects that exist in both versions are kept and updated recursively, so listeners registered for them stay
+	 * attached. Objects whose own values changed notify their listeners.
+	 *
+	 * @param resource
+	 *            The object to update
+	 * @param replacement
+	 *            The newer version of the object
+	 * @return True, if any value of the object or its children changed, false otherwise
+	 */
+	private static boolean replaceContent(final JSONObject resource, final JSONObject replacement) {
+		boolean changed = false;
+		boolean childChanged = false;
+		for (final String key : new ArrayList<>(resource.keySet())) {
+			if (!replacement.containsKey(key)) {
+				resource.removeKey(key);
+				changed = true;
+			}
+		}
+		for (final String key : replacement.keySet()) {
+			final Object value = replacement.getUnsafe(key);
+			final Object current = resource.getUnsafe(key);
+			if (value instanceof final JSONObject obj && current instanceof final JSONObject currentObj) {
+				copyDiscrimination(obj, currentObj);
+				childChanged |= replaceContent(currentObj, obj);
+				continue;
+			}
+			if (resource.containsKey(key) && Objects.equals(value, current)) {
+				continue;
+			}
+			changed = true;
+			if (value instanceof final JSONObject obj) {
+				resource.put(key, CopyOnAccessMap.copy(obj, resource));
+			} else if (value instanceof final JSONArray arr) {
+				resource.put(key, CopyOnAccessMap.copy(arr, resource));
+			} else if (value instanceof final Double d) {
+				resource.put(key, d);
+			} else if (value instanceof final Long l) {
+				resource.put(key, l);
+			} else if (value instanceof final Boolean b) {
+				resource.put(key, b);
+			} else if (value instanceof final String str) {
+				resource.put(key, str);
+			} else {
+				resource.putNull(key);
+			}
+		}
+		if (changed) {
+			resource.notifyListeners(null);
+		}
+		return changed || childChanged;
+	}
+
+	/**
+	 * Schedules the eviction of resources on the application thread
+	 *
+	 * The eviction runs after the current event, so a resource that was just acquired there is returned first. If the
+	 * JavaFX toolkit is not running, e.g. in the benchmarks, the eviction runs on the calling thread.
+	 */
+	private static void requestEviction() {
+		if (!evictionPending.compareAndSet(false, true)) return;
+		final Runnable eviction = () -> {
+			evictionPending.set(false);
+			evictResources();
+		};
+		try {
+			Platform.runLater(eviction);
+		} catch (final IllegalStateException e) {
+			eviction.run();
+		}
+	}
+
+	/**
+	 * Registers an evicted resource again if it is still referenced elsewhere
+	 *
+	 * Changes made to the resource while it was evicted are detected by the checksum comparison when saving.
+	 *
+	 * @param resource
+	 *            The evicted resource
+	 */
+	private static void resurrectResource(final JSONObject resource) {
+		if (paths.containsKey(resource)) return;
+		for (final Entry<String, WeakReference<JSONObject>> entry : evicted.entrySet()) {
+			if (entry.getValue().get() == resource) {
+				resurrectResource(entry.getKey());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Registers an evicted resource again if it is still referenced elsewhere
+	 *
+	 * @param path
+	 *            The path to the evicted resource
+	 * @return True, if the resource was registered again, false if it was not evicted or is no longer referenced
+	 */
+	private static boolean resurrectResource(final String path) {
+		final WeakReference<JSONObject> reference = evicted.remove(path);
+		if (reference == null) return false;
+		final JSONObject resource = reference.get();
+		if (resource == null) return false;
+		final GroupStorage group = storage;
+		final ResourceInfo info = group != null ? group.getInfo(path + ".json") : null;
+		long crc = info != null ? info.getCrc() : -1;
+		if (info != null && crc == -1) {
+			// The checksum is not known to every storage, without it the resource would be written on every save
+			try {
+				final byte[] content = group.read(path + ".json");
+				if (content != null) {
+					crc = checksum(content);
+				}
+			} catch (final IOException e) {
+				ErrorLogger.logError(e);
+			}
 		}
+		register(path, new ResourceEntry(resource, Source.ZIP, crc, info != null ? info.getSize() : 0));
+		return true;
+	}
+
+	/**
+	 * Registers all paths affected by a transaction as they were before it
+	 *
+	 * @param current
+	 *            The transaction to roll back
+	 */
+	private static void rollbackTransaction(final ResourceTransaction current) {
+		for (final Entry<String, ResourceEntry> previous : current.previous.entrySet()) {
+			final String path = previous.getKey();
+			unregister(path);
+			if (previous.getValue() != null) {
+				register(path, previous.getValue());
+			}
+			pathListeners.changed(path);
+		}
+	}
+
+	/**
+	 * Runs an action and writes all moves, deletions, creations and imports of resources it performs to the group storage
+	 * at once instead of writing them one by one
+	 *
+	 * Path listeners are notified once afterwards. If the action throws an exception or the changes could not be written,
+	 * all affected resources are registered at their previous paths again. Transactions started by the action are merged
+	 * into the outermost one, which decides whether the changes are written.
+	 *
+	 * @param action
+	 *            The action to run, e.g. renaming many heroes
+	 * @return True, if the changes were written or the transaction was merged into an outer one, false if they were rolled
+	 *         back
+	 */
+	public static boolean runTransaction(final Runnable action) {
+		if (transaction.get() != null) {
+			action.run();
+			return true;
+		}
+		final boolean[] committed = { false };
+		pathListeners.batch(() -> {
+			final ResourceTransaction current = new ResourceTransaction();
+			saveLock.lock();
+			transaction.set(current);
+			try {
+				action.run();
+				transaction.remove();
+				committed[0] = commitTransaction(current);
+			} finally {
+				transaction.remove();
+				if (!committed[0]) {
+					rollbackTransaction(current);
+				}
+				saveLock.unlock();
+			}
+		});
+		return committed[0];
 	}
 
 	/**
@@ -596,11 +1592,12 @@ public class ResourceManager {
 	 *            The path the json file is to be created at
 	 */
 	public static void saveResource(JSONObject resource, final String path) {
-		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path))) {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
 			for (final Function<JSONObject, JSONObject> sanitizer : resourceSanitizers) {
 				resource = sanitizer.apply(resource);
 			}
-			JSONPrinter.print(writer, resource);
+			JSONBytePrinter.print(resource, channel);
 		} catch (final IOException e) {
 			ErrorLogger.logError(e);
 		}
@@ -608,119 +1605,242 @@ public class ResourceManager {
 
 	/**
 	 * Saves all changed resources
+	 *
+	 * Resources that were reported as changed are written, all others are written if their content differs from the
+	 * persisted one. They are serialized in parallel on the JavaFX application thread, so the snapshot is consistent
+	 * even when saving in the background. Writing them happens while other threads can still read the previous versions.
+	 * Resources stay dirty until they were written and if they were changed again in the meantime.
 	 */
 	public static void saveResources() {
-		zipLock.writeLock().lock();
+		for (final String path : evicted.keySet()) {
+			resurrectResource(path);
+		}
+		final List<Tuple<String, ResourceEntry>> candidates = new ArrayList<>();
+		for (final Entry<String, ResourceEntry> entry : resources.entrySet()) {
+			final ResourceEntry resource = entry.getValue();
+			final boolean saved = switch (resource.source) {
+				case GENERAL, MOD -> entry.getKey().startsWith("settings");
+				case ZIP -> !entry.getKey().startsWith("data");
+			};
+			if (saved) {
+				candidates.add(new Tuple<>(entry.getKey(), resource));
+			}
+		}
+		final List<Tuple<Long, byte[]>> contents = onApplicationThread(() -> {
+			final long start = System.nanoTime();
+			final List<Tuple<Long, byte[]>> result = candidates.parallelStream().map(candidate -> {
+				final long snapshot = candidate._2.getChanges();
+				return new Tuple<>(snapshot, serializeIfChanged(candidate._2));
+			}).toList();
+			ResourceMetrics.serialized(System.nanoTime() - start);
+			return result;
+		});
+		saveLock.lock();
 		try {
-			if (zip != null) {
-				try {
-					zip.close();
-				} catch (final IOException e) {
-					ErrorLogger.logError(e);
-					return;
+			final Map<String, byte[]> changes = new LinkedHashMap<>();
+			final List<Integer> written = new ArrayList<>();
+			for (int i = 0; i < candidates.size(); ++i) {
+				final String path = candidates.get(i)._1;
+				final ResourceEntry resource = candidates.get(i)._2;
+				final byte[] content = contents.get(i)._2;
+				// Resources that were moved or deleted since the snapshot was taken were already written by their transactions
+				if (content == null || resources.get(path) != resource) {
+					continue;
 				}
-			}
-			try (final FileSystem zipFile = FileSystems.newFileSystem(zipPath.toPath())) {
-				for (final Entry<String, Tuple<JSONObject, Source>> entry : resources.entrySet()) {
-					String path = entry.getKey() + ".json";
-					switch (entry.getValue()._2) {
-						case MOD:
-							if (!path.startsWith("settings")) {
-								break;
-							}
-							path = "mod/" + path;
-						case GENERAL:
-							if (!path.startsWith("settings")) {
-								break;
-							}
-							try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(Util.getAppDir(), path))) {
-								JSONPrinter.print(writer, entry.getValue()._1);
-							} catch (final IOException e) {
-								ErrorLogger.logError(e);
-							}
-							break;
-						case ZIP:
-							if (path.startsWith("data")) {
-								break;
-							}
-							final Path p = zipFile.getPath("/" + path);
-							final Path parent = p.getParent();
-							if (parent != null) {
-								Files.createDirectories(parent);
-							}
-							try (final BufferedWriter zipwriter = Files.newBufferedWriter(p, StandardOpenOption.CREATE)) {
-								JSONPrinter.print(zipwriter, entry.getValue()._1);
-							} catch (final IOException e) {
-								ErrorLogger.logError(e);
-							}
-							break;
-						default:
-							break;
+				if (resource.source == Source.ZIP) {
+					changes.put(path + ".json", content);
+					written.add(i);
+				} else {
+					final String file = (resource.source == Source.MOD ? "mod/" : "") + path + ".json";
+					try {
+						Files.write(Paths.get(Util.getAppDir(), file), content);
+						files.refresh(file);
+						persisted(resource, content, contents.get(i)._1);
+					} catch (final IOException e) {
+						ErrorLogger.logError(e);
 					}
 				}
-			} catch (final IOException e) {
-				ErrorLogger.logError(e);
 			}
-			try {
-				zip = new ZipFile(zipPath);
-			} catch (final ZipException e) {
-				// This can happen if the zip is empty, just ignore it
-				zip = null;
-			} catch (final IOException e) {
-				ErrorLogger.logError(e);
+			if (writeGroup(changes)) {
+				for (final int i : written) {
+					persisted(candidates.get(i)._2, contents.get(i)._2, contents.get(i)._1);
+				}
+				final RecoveryJournal current = journal;
+				if (current != null) {
+					current.clear();
+				}
 			}
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
 		} finally {
-			zipLock.writeLock().unlock();
+			saveLock.unlock();
 		}
 	}
 
+	/**
+	 * Serializes a resource as UTF-8 encoded json
+	 *
+	 * @param resource
+	 *            The resource to serialize
+	 * @return The serialized resource
+	 */
+	private static byte[] serialize(final JSONObject resource) {
+		return JSONBytePrinter.print(resource);
+	}
+
+	/**
+	 * Serializes a resource if it differs from its persisted state
+	 *
+	 * Resources that were reported as changed by listeners or were never persisted are serialized anyway. All others are
+	 * compared to the checksum of their persisted content as a fallback for changes that were not reported, e.g. while the
+	 * resource was evicted.
+	 *
+	 * @param entry
+	 *            The resource to check
+	 * @return The serialized resource or null, if it did not change
+	 */
+	private static byte[] serializeIfChanged(final ResourceEntry entry) {
+		final byte[] content = serialize(entry.resource);
+		if (!entry.dirty && entry.crc != -1 && checksum(content) == entry.crc) return null;
+		return content;
+	}
+
 	public static void setDiscriminatingAttribute(final String key) {
 		discriminatingAttribute = key;
 	}
 
+	/**
+	 * Sets the storage of the current group
+	 *
+	 * The storage of the previous group is closed. Unsaved changes are discarded.
+	 *
+	 * @param groupStorage
+	 *            The storage containing the data for the group, e.g. an in-memory storage for tests
+	 */
+	public static void setGroupStorage(final GroupStorage groupStorage) {
+		pathListeners.batch(() -> {
+			saveLock.lock();
+			try {
+				journal = null;
+				final GroupStorage previous = storage;
+				storage = groupStorage;
+				if (previous != null) {
+					try {
+						previous.close();
+					} catch (final IOException e) {
+						ErrorLogger.logError(e);
+					}
+				}
+				discardChanges();
+				final Path location = groupStorage.getLocation();
+				if (location != null) {
+					journal = new RecoveryJournal(Paths.get(location + ".journal"));
+					try (final BufferedWriter writer = new BufferedWriter(new FileWriter(Util.getAppDir() + "/settings/Gruppe.txt"))) {
+						writer.write(location.toString());
+					} catch (final IOException e) {
+						ErrorLogger.logError(e);
+					}
+				}
+				pathListeners.changedAll(false);
+			} finally {
+				saveLock.unlock();
+			}
+		});
+	}
+
 	public static void setPriorities(final Collection<String> priorities) {
+		final Map<String, Integer> index = new HashMap<>();
+		int prio = 0;
+		for (final String priority : priorities) {
+			index.putIfAbsent(priority, prio);
+			++prio;
+		}
 		ResourceManager.priorities = priorities;
+		priorityIndex = index;
 	}
 
 	/**
-	 * Sets the zip file containing the data for the current group
+	 * Sets the zip file or directory containing the data for the current group
 	 *
 	 * @param path
-	 *            The path the zip file resides at
-	 * @throws IOException
-	 *             If there is no such zip file
+	 *            The path the zip file or directory resides at
 	 */
 	public static void setZipFile(final File path) {
-		zipLock.writeLock().lock();
+		setGroupStorage(GroupStorage.open(path));
+	}
+
+	/**
+	 * Shows the progress of an import in the status bar
+	 *
+	 * Updates that are reported while an update is still scheduled are merged into it, so the application thread only
+	 * shows the latest progress. If the JavaFX toolkit is not running, e.g. in the benchmarks, nothing is shown.
+	 *
+	 * @param done
+	 *            The number of files that were parsed
+	 * @param total
+	 *            The number of files to import
+	 */
+	private static void showImportProgress(final int done, final int total) {
+		importProgress.set((long) done << 32 | total);
+		if (!importProgressPending.compareAndSet(false, true)) return;
 		try {
-			zipPath = path;
-			try {
-				zip = new ZipFile(path);
-				discardChanges();
-			} catch (final ZipException e) {
-				// This can happen if the zip is empty, just ignore it
-				zip = null;
-			} catch (final IOException e) {
-				ErrorLogger.logError(e);
-			}
-			for (final List<Consumer<Boolean>> listeners : pathListeners.values()) {
-				for (final Consumer<Boolean> listener : listeners) {
-					listener.accept(false);
-				}
-			}
-			try (final BufferedWriter writer = new BufferedWriter(new FileWriter(Util.getAppDir() + "/settings/Gruppe.txt"))) {
-				writer.write(path.getAbsolutePath());
-			} catch (final IOException e) {
-				ErrorLogger.logError(e);
-			}
-			final File directory = path.getParentFile();
-			for (final File current : directory.listFiles()) {
-				if (current.getName().startsWith("zipfstmp")) {
-					current.delete();
+			Platform.runLater(() -> {
+				importProgressPending.set(false);
+				final long progress = importProgress.get();
+				final int currentDone = (int) (progress >>> 32);
+				final int currentTotal = (int) progress;
+				final StatusBar statusBar = Main.statusBar;
+				if (statusBar == null) return;
+				if (currentDone < currentTotal) {
+					statusBar.setText("Importiere Dateien (" + currentDone + "/" + currentTotal + ")");
+					statusBar.setProgress((double) currentDone / currentTotal);
+				} else {
+					statusBar.setText("");
+					statusBar.setProgress(0);
 				}
-			}
-		} finally {
-			zipLock.writeLock().unlock();
+			});
+		} catch (final IllegalStateException e) {
+			importProgressPending.set(false);
+		}
+	}
+
+	/**
+	 * Unregisters a resource and stops tracking changes to it
+	 *
+	 * @param path
+	 *            The path of the resource
+	 * @return The bookkeeping for the resource or null, if there was no such resource
+	 */
+	private static ResourceEntry unregister(final String path) {
+		final ResourceEntry entry = resources.remove(path);
+		if (entry != null) {
+			paths.remove(entry.resource);
+			JSONListeners.remove(entry.resource, entry.listener);
+			residentSize.addAndGet(-entry.size);
+		}
+		evicted.remove(path);
+		return entry;
+	}
+
+	/**
+	 * Writes changes to the storage of the current group
+	 *
+	 * Has to be called while holding the save lock.
+	 *
+	 * @param changes
+	 *            The new contents by the names of the entries, null for entries to delete
+	 * @return True, if the changes were written, false otherwise
+	 */
+	private static boolean writeGroup(final Map<String, byte[]> changes) {
+		if (changes.isEmpty()) return true;
+		final GroupStorage group = storage;
+		if (group == null) return false;
+		try {
+			group.write(changes);
+			return true;
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+			return false;
 		}
 	}
 
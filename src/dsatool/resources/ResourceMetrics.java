@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import dsatool.resources.ResourceManager.Source;
+import dsatool.util.ErrorLogger;
+
+/**
+ * Collects metrics about loading and saving resources
+ *
+ * The metrics are cheap to record, so they are always collected. They can be inspected in the diagnostics dialog or
+ * via JMX as dsatool:type=ResourceManager.
+ */
+public final class ResourceMetrics implements ResourceMetricsMXBean {
+
+	private static final ResourceMetrics instance = new ResourceMetrics();
+
+	/**
+	 * Records that a resource was loaded
+	 *
+	 * @param path
+	 *            The path of the resource
+	 */
+	static void acquired(final String path) {
+		final int end = path.indexOf('/');
+		count(instance.acquires, end < 0 ? path : path.substring(0, end), 1);
+	}
+
+	/**
+	 * Records that entries of the group archive were compressed
+	 *
+	 * @param nanos
+	 *            The time it took in nanoseconds
+	 */
+	static void compressed(final long nanos) {
+		instance.compressTime.add(nanos);
+	}
+
+	private static void count(final Map<String, LongAdder> counters, final String key, final long value) {
+		counters.computeIfAbsent(key, _ -> new LongAdder()).add(value);
+	}
+
+	/**
+	 * Gets the metrics
+	 *
+	 * @return The metrics of the ResourceManager
+	 */
+	public static ResourceMetrics getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Records that changed resources were serialized for the recovery journal
+	 *
+	 * @param nanos
+	 *            The elapsed time in nanoseconds
+	 */
+	static void journaled(final long nanos) {
+		instance.journalTime.add(nanos);
+	}
+
+	/**
+	 * Records that a path listener was called
+	 *
+	 * @param listener
+	 *            The listener
+	 * @param nanos
+	 *            The time the listener took in nanoseconds
+	 */
+	static void notified(final Object listener, final long nanos) {
+		final String name = nameOf(listener);
+		count(instance.listenerCalls, name, 1);
+		count(instance.listenerTimes, name, nanos);
+	}
+
+	/**
+	 * Determines the name a listener or sanitizer is reported by
+	 *
+	 * @param callback
+	 *            The listener or sanitizer
+	 * @return The name of the class it was declared in
+	 */
+	private static String nameOf(final Object callback) {
+		final String name = callback.getClass().getName();
+		final int lambda = name.indexOf("$$Lambda");
+		return lambda < 0 ? name : name.substring(0, lambda);
+	}
+
+	/**
+	 * Records that a layer of a resource was parsed
+	 *
+	 * @param source
+	 *            The layer that was parsed
+	 * @param nanos
+	 *            The time it took in nanoseconds
+	 */
+	static void parsed(final Source source, final long nanos) {
+		count(instance.parseTimes, source.name(), nanos);
+	}
+
+	/**
+	 * Records that a layer of a resource was read
+	 *
+	 * @param source
+	 *            The layer that was read
+	 * @param bytes
+	 *            The size of the content in bytes
+	 */
+	static void read(final Source source, final long bytes) {
+		count(instance.bytesRead, source.name(), bytes);
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server
+	 */
+	public static synchronized void register() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName("dsatool:type=ResourceManager");
+			if (!server.isRegistered(name)) {
+				server.registerMBean(instance, name);
+			}
+		} catch (final JMException e) {
+			ErrorLogger.logError(e);
+		}
+	}
+
+	/**
+	 * Records that a resource sanitizer was applied
+	 *
+	 * @param sanitizer
+	 *            The sanitizer
+	 * @param nanos
+	 *            The time it took in nanoseconds
+	 */
+	static void sanitized(final Object sanitizer, final long nanos) {
+		count(instance.sanitizerTimes, nameOf(sanitizer), nanos);
+	}
+
+	/**
+	 * Records that the group archive was written
+	 */
+	static void saved() {
+		instance.saves.increment();
+	}
+
+	/**
+	 * Records that the changed resources were serialized for saving
+	 *
+	 * @param nanos
+	 *            The elapsed time in nanoseconds
+	 */
+	static void serialized(final long nanos) {
+		instance.serializeTime.add(nanos);
+	}
+
+	private static Map<String, Long> snapshot(final Map<String, LongAdder> counters, final boolean nanos) {
+		final Map<String, Long> result = new TreeMap<>();
+		for (final Entry<String, LongAdder> counter : counters.entrySet()) {
+			final long value = counter.getValue().sum();
+			result.put(counter.getKey(), nanos ? TimeUnit.NANOSECONDS.toMillis(value) : value);
+		}
+		return result;
+	}
+
+	/**
+	 * Records that a thread had to wait for the lock of the group archive or its change log
+	 *
+	 * @param nanos
+	 *            The time it waited in nanoseconds
+	 */
+	static void waitedForZipLock(final long nanos) {
+		instance.zipLockWaits.increment();
+		instance.zipLockWaitTime.add(nanos);
+	}
+
+	/**
+	 * Records that the group archive was written
+	 *
+	 * @param nanos
+	 *            The time it took in nanoseconds, excluding compression
+	 */
+	static void written(final long nanos) {
+		instance.writeTime.add(nanos);
+	}
+
+	private final Map<String, LongAdder> acquires = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> bytesRead = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> parseTimes = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> sanitizerTimes = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> listenerCalls = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> listenerTimes = new ConcurrentHashMap<>();
+	private final LongAdder saves = new LongAdder();
+	private final LongAdder serializeTime = new LongAdder();
+	private final LongAdder journalTime = new LongAdder();
+	private final LongAdder compressTime = new LongAdder();
+	private final LongAdder writeTime = new LongAdder();
+	private final LongAdder zipLockWaits = new LongAdder();
+	private final LongAdder zipLockWaitTime = new LongAdder();
+
+	private ResourceMetrics() {}
+
+	@Override
+	public Map<String, Long> getAcquireCounts() {
+		return snapshot(acquires, false);
+	}
+
+	@Override
+	public Map<String, Long> getBytesRead() {
+		return snapshot(bytesRead, false);
+	}
+
+	@Override
+	public long getCompressTime() {
+		return TimeUnit.NANOSECONDS.toMillis(compressTime.sum());
+	}
+
+	@Override
+	public long getJournalTime() {
+		return TimeUnit.NANOSECONDS.toMillis(journalTime.sum());
+	}
+
+	@Override
+	public Map<String, Long> getParseTimes() {
+		return snapshot(parseTimes, true);
+	}
+
+	@Override
+	public Map<String, Long> getPathListenerCalls() {
+		return snapshot(listenerCalls, false);
+	}
+
+	@Override
+	public Map<String, Long> getPathListenerTimes() {
+		return snapshot(listenerTimes, true);
+	}
+
+	@Override
+	public Map<String, Long> getSanitizerTimes() {
+		return snapshot(sanitizerTimes, true);
+	}
+
+	@Override
+	public long getSaveCount() {
+		return saves.sum();
+	}
+
+	@Override
+	public long getSerializeTime() {
+		return TimeUnit.NANOSECONDS.toMillis(serializeTime.sum());
+	}
+
+	@Override
+	public long getWriteTime() {
+		return TimeUnit.NANOSECONDS.toMillis(writeTime.sum());
+	}
+
+	@Override
+	public long getZipLockWaitCount() {
+		return zipLockWaits.sum();
+	}
+
+	@Override
+	public long getZipLockWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(zipLockWaitTime.sum());
+	}
+
+	@Override
+	public void reset() {
+		for (final Map<String, LongAdder> counters : List.of(acquires, bytesRead, parseTimes, sanitizerTimes, listenerCalls, listenerTimes)) {
+			counters.clear();
+		}
+		for (final LongAdder counter : List.of(saves, serializeTime, journalTime, compressTime, writeTime, zipLockWaits, zipLockWaitTime)) {
+			counter.reset();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.util.Map;
+
+/**
+ * The metrics of the ResourceManager as exposed via JMX
+ *
+ * All values are accumulated since the start of the application or the last reset.
+ */
+public interface ResourceMetricsMXBean {
+
+	/**
+	 * Gets the number of resources loaded, by the first component of their path
+	 *
+	 * @return The number of loaded resources
+	 */
+	Map<String, Long> getAcquireCounts();
+
+	/**
+	 * Gets the number of bytes read, by the layer they were read from
+	 *
+	 * @return The number of bytes read
+	 */
+	Map<String, Long> getBytesRead();
+
+	/**
+	 * Gets the time spent compressing entries of the group archive
+	 *
+	 * @return The time in milliseconds
+	 */
+	long getCompressTime();
+
+	/**
+	 * Gets the time spent serializing resources for the recovery journal
+	 *
+	 * @return The elapsed time in milliseconds
+	 */
+	long getJournalTime();
+
+	/**
+	 * Gets the time spent parsing, by the layer that was parsed
+	 *
+	 * @return The times in milliseconds
+	 */
+	Map<String, Long> getParseTimes();
+
+	/**
+	 * Gets the number of calls of path listeners, by the class of the listener
+	 *
+	 * @return The number of calls
+	 */
+	Map<String, Long> getPathListenerCalls();
+
+	/**
+	 * Gets the time spent in path listeners, by the class of the listener
+	 *
+	 * @return The times in milliseconds
+	 */
+	Map<String, Long> getPathListenerTimes();
+
+	/**
+	 * Gets the time spent in resource sanitizers, by the class of the sanitizer
+	 *
+	 * @return The times in milliseconds
+	 */
+	Map<String, Long> getSanitizerTimes();
+
+	/**
+	 * Gets the number of times the group archive was written
+	 *
+	 * @return The number of writes
+	 */
+	long getSaveCount();
+
+	/**
+	 * Gets the time spent serializing resources for saving, measured from the start to the end of serializing all changed
+	 * resources of a save, which happens in parallel
+	 *
+	 * @return The elapsed time in milliseconds
+	 */
+	long getSerializeTime();
+
+	/**
+	 * Gets the time spent writing the group archive, excluding compression
+	 *
+	 * @return The time in milliseconds
+	 */
+	long getWriteTime();
+
+	/**
+	 * Gets the number of times a thread had to wait for the lock of the group archive or its change log
+	 *
+	 * @return The number of waits
+	 */
+	long getZipLockWaitCount();
+
+	/**
+	 * Gets the time threads spent waiting for the lock of the group archive or its change log
+	 *
+	 * @return The time in milliseconds
+	 */
+	long getZipLockWaitTime();
+
+	/**
+	 * Resets all metrics
+	 */
+	void reset();
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The moves, deletions, creations and imports of resources collected while a transaction is running
+ *
+ * The changes to the group archive are only written when the transaction is committed. The registrations of all
+ * affected paths are remembered as they were before the transaction, so they can be restored if it is rolled back.
+ * Rolling back only restores these registrations. If the group is stored in a directory, a commit that failed while
+ * replacing the files may already have changed some of them, see {@link DirectoryGroupStorage}.
+ */
+final class ResourceTransaction {
+
+	/**
+	 * The resources to write to the group archive by their paths, null for resources to delete from it
+	 */
+	final Map<String, ResourceEntry> changes = new LinkedHashMap<>();
+
+	/**
+	 * The registrations of all affected paths before the transaction, null for paths that were not registered
+	 */
+	final Map<String, ResourceEntry> previous = new HashMap<>();
+
+	/**
+	 * Records that a resource is to be deleted
+	 *
+	 * @param path
+	 *            The path of the resource
+	 * @param archived
+	 *            True, if the group archive contains the resource, false otherwise
+	 * @return True, if the resource will be deleted from the group archive, false otherwise
+	 */
+	boolean delete(final String path, final boolean archived) {
+		if (archived) {
+			changes.put(path, null);
+		} else {
+			changes.remove(path);
+		}
+		return archived;
+	}
+
+	/**
+	 * Records that a resource is to be written
+	 *
+	 * @param path
+	 *            The path of the resource
+	 * @param entry
+	 *            The bookkeeping for the resource, which is serialized when the transaction is committed
+	 */
+	void put(final String path, final ResourceEntry entry) {
+		changes.put(path, entry);
+	}
+
+	/**
+	 * Remembers the registration of a path before it is changed for the first time in this transaction
+	 *
+	 * @param path
+	 *            The path
+	 * @param entry
+	 *            The bookkeeping currently registered for the path or null, if there is none
+	 */
+	void track(final String path, final ResourceEntry entry) {
+		if (!previous.containsKey(path)) {
+			previous.put(path, entry);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import dsatool.util.ErrorLogger;
+import dsatool.util.Util;
+import javafx.application.Platform;
+
+/**
+ * Watches the data, mod and settings directories and reloads resources whose files were changed outside of the
+ * application
+ *
+ * Editors usually write a file in several steps, so changes are collected until no more events arrived for a moment.
+ * Only the resources that belong to the changed files are read again.
+ */
+public class ResourceWatcher {
+
+	/**
+	 * The directories below the application directory that are watched
+	 */
+	private static final List<String> DIRECTORIES = List.of("data", "mod", "settings");
+
+	/**
+	 * The time in milliseconds without further events after which the collected changes are applied
+	 */
+	private static final int SETTLE_TIME = 300;
+
+	/**
+	 * Maps the registered watch keys to the directories they watch
+	 */
+	private static final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+	private static Path appDir;
+
+	private static Thread thread;
+
+	/**
+	 * True, if events were lost or a directory was created since the changes were last applied, so the index of the files
+	 * has to be scanned again
+	 */
+	private static boolean rescan;
+
+	private static WatchService service;
+
+	/**
+	 * Checks whether the files of the resources are watched
+	 *
+	 * @return True, if the watcher was started and not stopped, false otherwise
+	 */
+	static synchronized boolean isRunning() {
+		return thread != null;
+	}
+
+	/**
+	 * Registers a directory and all its subdirectories
+	 *
+	 * @param directory
+	 *            The directory to watch
+	 */
+	private static void register(final Path directory) {
+		if (!Files.isDirectory(directory)) return;
+		try (Stream<Path> tree = Files.walk(directory)) {
+			for (final Path current : (Iterable<Path>) tree.filter(Files::isDirectory)::iterator) {
+				directories.put(current.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), current);
+			}
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+		}
+	}
+
+	/**
+	 * Starts watching the files of the resources
+	 */
+	public static synchronized void start() {
+		if (thread != null) return;
+		try {
+			service = FileSystems.getDefault().newWatchService();
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+			return;
+		}
+		appDir = Paths.get(Util.getAppDir());
+		for (final String directory : DIRECTORIES) {
+			register(appDir.resolve(directory));
+		}
+		thread = new Thread(ResourceWatcher::watch, "DSATool-ResourceWatcher");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the files of the resources
+	 */
+	public static synchronized void stop() {
+		if (thread != null) {
+			try {
+				service.close();
+			} catch (final IOException e) {
+				ErrorLogger.logError(e);
+			}
+			directories.clear();
+			thread = null;
+		}
+	}
+
+	/**
+	 * Determines the resource a file belongs to
+	 *
+	 * @param file
+	 *            The file
+	 * @return The path of the resource or null, if the file does not belong to a resource
+	 */
+	private static String toResourcePath(final Path file) {
+		final String name = file.getFileName().toString();
+		if (!name.endsWith(".json")) return null;
+		Path relative = appDir.relativize(file);
+		if (relative.getNameCount() > 1 && "mod".equals(relative.getName(0).toString())) {
+			relative = relative.subpath(1, relative.getNameCount());
+		}
+		final StringBuilder path = new StringBuilder();
+		for (final Path part : relative) {
+			if (!path.isEmpty()) {
+				path.append('/');
+			}
+			path.append(part);
+		}
+		return path.substring(0, path.length() - ".json".length());
+	}
+
+	/**
+	 * Collects changes until no more events arrive for a moment and reloads the affected resources on the application
+	 * thread
+	 */
+	private static void watch() {
+		final WatchService watched = service;
+		final Set<String> changed = new LinkedHashSet<>();
+		try {
+			while (true) {
+				final boolean pending = !changed.isEmpty() || rescan;
+				final WatchKey key = pending ? watched.poll(SETTLE_TIME, TimeUnit.MILLISECONDS) : watched.take();
+				if (key == null) {
+					final List<String> paths = new ArrayList<>(changed);
+					final boolean invalidate = rescan;
+					changed.clear();
+					rescan = false;
+					Platform.runLater(() -> {
+						if (invalidate) {
+							ResourceManager.invalidateFiles();
+						}
+						ResourceManager.reloadResources(paths);
+					});
+					continue;
+				}
+				final Path directory = directories.get(key);
+				for (final WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						rescan = true;
+						continue;
+					}
+					if (directory == null) {
+						continue;
+					}
+					final Path file = directory.resolve((Path) event.context());
+					if (event.kind() == ENTRY_CREATE && Files.isDirectory(file)) {
+						// Files created in the directory before it was registered are not reported
+						register(file);
+						rescan = true;
+					} else {
+						final String path = toResourcePath(file);
+						if (path != null) {
+							changed.add(path);
+						}
+					}
+				}
+				if (!key.reset()) {
+					directories.remove(key);
+				}
+			}
+		} catch (final InterruptedException | ClosedWatchServiceException e) {
+			// Watching was stopped
+		}
+	}
+
+	private ResourceWatcher() {}
+}
@@ -24,6 +24,7 @@ import java.util.Set;
 import dsatool.settings.Setting;
 import jsonant.value.JSONArray;
 import jsonant.value.JSONObject;
+import jsonant.value.JSONValue;
 
 public class Settings {
 	private static Map<String, Map<String, Set<Setting>>> settings = new LinkedHashMap<>();
@@ -111,7 +112,9 @@ public class Settings {
 
 	public static void removeSetting(final String... path) {
 		final JSONObject setting = getSetting(path, false);
-		setting.getParent().remove(setting);
+		final JSONValue parent = setting.getParent();
+		parent.remove(setting);
+		parent.notifyListeners(null);
 	}
 
 	public static void setSetting(final boolean value, final String... path) {
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A map that compares its keys by identity and only holds weak references to them
+ *
+ * Entries are removed once their key was garbage collected. JSONObjects compare their content in equals, so a
+ * WeakHashMap would mix up distinct objects with the same content. Values must not reference their keys, otherwise the
+ * keys never become unreachable.
+ *
+ * @param <K>
+ *            The type of the keys
+ * @param <V>
+ *            The type of the values
+ */
+final class WeakIdentityMap<K, V> {
+
+	private static class Key<K> extends WeakReference<K> {
+		private final int hash;
+
+		private Key(final K referent, final ReferenceQueue<K> queue) {
+			super(referent, queue);
+			hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (this == other) return true;
+			if (!(other instanceof Key)) return false;
+			final Object referent = get();
+			return referent != null && referent == ((Key<?>) other).get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * A key that is only used for lookups, so it does not need to be enqueued
+	 */
+	private static class Lookup<K> extends Key<K> {
+		private Lookup(final K referent) {
+			super(referent, null);
+		}
+	}
+
+	private final Map<Key<K>, V> entries = new HashMap<>();
+
+	private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+	/**
+	 * Removes all entries
+	 */
+	synchronized void clear() {
+		expunge();
+		entries.clear();
+	}
+
+	/**
+	 * Removes the entries whose keys were garbage collected
+	 */
+	private void expunge() {
+		Reference<? extends K> reference;
+		while ((reference = queue.poll()) != null) {
+			entries.remove(reference);
+		}
+	}
+
+	/**
+	 * Gets the value for a key
+	 *
+	 * @param key
+	 *            The key
+	 * @return The value or null, if there is no value for that key
+	 */
+	synchronized V get(final K key) {
+		expunge();
+		return entries.get(new Lookup<>(key));
+	}
+
+	/**
+	 * Sets the value for a key
+	 *
+	 * @param key
+	 *            The key
+	 * @param value
+	 *            The value
+	 */
+	synchronized void put(final K key, final V value) {
+		expunge();
+		entries.put(new Key<>(key, queue), value);
+	}
+
+	/**
+	 * Removes the value for a key
+	 *
+	 * @param key
+	 *            The key
+	 */
+	synchronized void remove(final K key) {
+		expunge();
+		entries.remove(new Lookup<>(key));
+	}
+
+	/**
+	 * Returns the number of entries
+	 *
+	 * @return The number of entries whose keys were not garbage collected yet
+	 */
+	synchronized int size() {
+		expunge();
+		return entries.size();
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import dsatool.util.ErrorLogger;
+
+/**
+ * Stores a group in a single zip file
+ *
+ * Every write produces a new version of the zip file next to it, which replaces it with an atomic rename. Readers keep
+ * using the previous version until then.
+ */
+final class ZipGroupStorage implements GroupStorage {
+
+	/**
+	 * Describes an entry of the zip file
+	 *
+	 * @param entry
+	 *            The entry
+	 * @return The description of the entry
+	 */
+	private static ResourceInfo info(final ZipEntry entry) {
+		final String name = entry.getName();
+		final String path = name.endsWith(".json") ? name.substring(0, name.length() - 5) : name;
+		return new ResourceInfo(path, name.substring(name.lastIndexOf('/') + 1), entry.getSize(), entry.getCrc(), false);
+	}
+
+	private static byte[] read(final ZipFile file, final ZipIndex index, final String name) throws IOException {
+		if (file == null || index == null) return null;
+		final ZipEntry entry = index.getEntry(name);
+		if (entry == null) return null;
+		try (InputStream in = file.getInputStream(entry)) {
+			return in.readAllBytes();
+		}
+	}
+
+	private final Path archive;
+
+	/**
+	 * The opened zip file, null if it is empty or could not be opened
+	 */
+	private volatile ZipFile zip;
+
+	/**
+	 * The index of the central directory of the zip file
+	 */
+	private volatile ZipIndex index;
+
+	/**
+	 * Guards the zip file handle against being closed while it is read
+	 *
+	 * Entries are read under an optimistic read, the lock is only acquired if the zip file was swapped in the meantime. The
+	 * lock is not reentrant, so no other locks may be acquired while holding it.
+	 */
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * Opens a zip file and removes temporary files left next to it by interrupted writes
+	 *
+	 * @param archive
+	 *            The path of the zip file, which is created on the first write if it does not exist
+	 */
+	ZipGroupStorage(final Path archive) {
+		this.archive = archive.toAbsolutePath();
+		open();
+		final File directory = this.archive.getParent().toFile();
+		final String temporaryPrefix = this.archive.getFileName() + ".";
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File current : files) {
+				final String name = current.getName();
+				if (name.startsWith("zipfstmp") || name.startsWith(temporaryPrefix) && name.endsWith(".tmp")) {
+					current.delete();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		final long stamp = lockForWriting();
+		try {
+			if (zip != null) {
+				zip.close();
+			}
+			zip = null;
+			index = null;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void forEachFile(final String path, final Consumer<ResourceInfo> action) {
+		final ZipIndex current = index;
+		if (current != null) {
+			current.forEachFile(path, entry -> {
+				if (entry.getName().endsWith(".json")) {
+					action.accept(info(entry));
+				}
+			});
+		}
+	}
+
+	@Override
+	public ResourceInfo getInfo(final String name) {
+		final ZipIndex current = index;
+		final ZipEntry entry = current != null ? current.getEntry(name) : null;
+		return entry != null ? info(entry) : null;
+	}
+
+	@Override
+	public Path getLocation() {
+		return archive;
+	}
+
+	@Override
+	public List<ResourceInfo> list(final String path) {
+		final ZipIndex current = index;
+		return current != null ? current.list(path) : List.of();
+	}
+
+	/**
+	 * Acquires the write lock for the zip file, recording the time spent waiting for it
+	 *
+	 * @return The stamp of the lock
+	 */
+	private long lockForWriting() {
+		long stamp = lock.tryWriteLock();
+		if (stamp == 0) {
+			final long start = System.nanoTime();
+			stamp = lock.writeLock();
+			ResourceMetrics.waitedForZipLock(System.nanoTime() - start);
+		}
+		return stamp;
+	}
+
+	/**
+	 * (Re-)opens the zip file and rebuilds its index
+	 *
+	 * Has to be called while holding the write lock or before the storage is published.
+	 */
+	private void open() {
+		try {
+			zip = new ZipFile(archive.toFile());
+			index = new ZipIndex(zip);
+		} catch (final ZipException e) {
+			// This can happen if the zip is empty, just ignore it
+			zip = null;
+			index = null;
+		} catch (final IOException e) {
+			ErrorLogger.logError(e);
+			zip = null;
+			index = null;
+		}
+	}
+
+	/**
+	 * Reads the content of an entry
+	 *
+	 * The entry is read under an optimistic read of the lock, which is only acquired if the zip file was swapped while
+	 * reading.
+	 */
+	@Override
+	public byte[] read(final String name) throws IOException {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				final byte[] result = read(zip, index, name);
+				if (lock.validate(stamp)) return result;
+			} catch (final IOException | IllegalStateException e) {
+				// The zip file was closed while reading, unless it was a genuine error
+				if (lock.validate(stamp)) throw e;
+			}
+		}
+		stamp = lock.tryReadLock();
+		if (stamp == 0) {
+			final long start = System.nanoTime();
+			stamp = lock.readLock();
+			ResourceMetrics.waitedForZipLock(System.nanoTime() - start);
+		}
+		try {
+			return read(zip, index, name);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Writes a new version of the zip file and reopens it
+	 *
+	 * The new version is written while readers can still access the previous one, the write lock is only held to swap
+	 * them.
+	 */
+	@Override
+	public void write(final Map<String, byte[]> changes) throws IOException {
+		if (changes.isEmpty()) return;
+		final long start = System.nanoTime();
+		final GroupArchiveWriter writer = new GroupArchiveWriter(archive);
+		for (final Entry<String, byte[]> change : changes.entrySet()) {
+			if (change.getValue() == null) {
+				writer.delete(change.getKey());
+			} else {
+				writer.put(change.getKey(), change.getValue());
+			}
+		}
+		final Path temporary = writer.write();
+		final long stamp = lockForWriting();
+		try {
+			if (zip != null) {
+				zip.close();
+			}
+			GroupArchiveWriter.replace(temporary, archive);
+		} catch (final IOException e) {
+			try {
+				Files.deleteIfExists(temporary);
+			} catch (final IOException e1) {
+				e.addSuppressed(e1);
+			}
+			throw e;
+		} finally {
+			open();
+			lock.unlockWrite(stamp);
+			ResourceMetrics.compressed(writer.getCompressTime());
+			ResourceMetrics.written(System.nanoTime() - start - writer.getCompressTime());
+			ResourceMetrics.saved();
+		}
+	}
+}
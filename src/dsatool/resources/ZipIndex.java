@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 DSATool team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dsatool.resources;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An in-memory index of the central directory of a zip file, organized as a trie of path segments
+ *
+ * The index is immutable and has to be rebuilt whenever the zip file is reopened.
+ */
+final class ZipIndex {
+
+	/**
+	 * A node of the trie, representing either a file or a directory
+	 */
+	private static class Node {
+		private final String name;
+		private ZipEntry entry;
+		private TreeMap<String, Node> children;
+
+		private Node(final String name) {
+			this.name = name;
+		}
+
+		private Node getOrCreateChild(final String childName) {
+			if (children == null) {
+				children = new TreeMap<>();
+			}
+			return children.computeIfAbsent(childName, Node::new);
+		}
+
+		private boolean isDirectory() {
+			return children != null || entry != null && entry.isDirectory();
+		}
+	}
+
+	/**
+	 * Splits a path into its non-empty segments
+	 *
+	 * @param path
+	 *            The path to split
+	 * @return The segments of the path
+	 */
+	private static String[] segments(final String path) {
+		final List<String> result = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i <= path.length(); ++i) {
+			if (i == path.length() || path.charAt(i) == '/') {
+				if (i > start) {
+					result.add(path.substring(start, i));
+				}
+				start = i + 1;
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	private final Node root = new Node("");
+
+	private final int size;
+
+	/**
+	 * Builds the index from the central directory of a zip file
+	 *
+	 * @param zip
+	 *            The zip file to index
+	 */
+	ZipIndex(final ZipFile zip) {
+		int count = 0;
+		final Enumeration<? extends ZipEntry> entries = zip.entries();
+		while (entries.hasMoreElements()) {
+			final ZipEntry entry = entries.nextElement();
+			Node current = root;
+			for (final String segment : segments(entry.getName())) {
+				current = current.getOrCreateChild(segment);
+			}
+			if (current != root) {
+				current.entry = entry;
+				if (!entry.isDirectory()) {
+					++count;
+				}
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * Finds the node for a path
+	 *
+	 * @param path
+	 *            The path to look up
+	 * @return The node or null, if there is no such node
+	 */
+	private Node find(final String path) {
+		Node current = root;
+		for (final String segment : segments(path)) {
+			if (current.children == null) return null;
+			current = current.children.get(segment);
+			if (current == null) return null;
+		}
+		return current;
+	}
+
+	/**
+	 * Calls an action for every file below a directory, in the order of their paths
+	 *
+	 * @param path
+	 *            The directory to traverse
+	 * @param action
+	 *            The action to call for every file entry
+	 */
+	void forEachFile(final String path, final Consumer<ZipEntry> action) {
+		final Node node = find(path);
+		if (node != null && node != root && node.isDirectory()) {
+			forEachFile(node, action);
+		}
+	}
+
+	private void forEachFile(final Node node, final Consumer<ZipEntry> action) {
+		if (node.children != null) {
+			for (final Node child : node.children.values()) {
+				forEachFile(child, action);
+			}
+		} else if (node.entry != null && !node.entry.isDirectory()) {
+			action.accept(node.entry);
+		}
+	}
+
+	/**
+	 * Gets the entry for a file
+	 *
+	 * @param name
+	 *            The name of the entry within the zip file
+	 * @return The entry or null, if there is no such file
+	 */
+	ZipEntry getEntry(final String name) {
+		final Node node = find(name);
+		if (node == null || node == root || node.entry == null || node.entry.isDirectory()) return null;
+		return node.entry;
+	}
+
+	/**
+	 * Checks whether a path denotes a directory
+	 *
+	 * @param path
+	 *            The path to check
+	 * @return True, if the path is a directory containing at least one entry, false otherwise
+	 */
+	boolean isDirectory(final String path) {
+		final Node node = find(path);
+		return node != null && node != root && node.isDirectory();
+	}
+
+	/**
+	 * Lists the direct children of a directory
+	 *
+	 * @param path
+	 *            The directory to list
+	 * @return The files and directories in that directory, ordered by name
+	 */
+	List<ResourceInfo> list(final String path) {
+		final Node node = find(path);
+		if (node == null || node.children == null) return List.of();
+		final String prefix = node == root ? "" : String.join("/", segments(path)) + "/";
+		final List<ResourceInfo> result = new ArrayList<>(node.children.size());
+		for (final Node child : node.children.values()) {
+			if (child.isDirectory()) {
+				result.add(new ResourceInfo(prefix + child.name + "/", child.name, -1, -1, true));
+			} else {
+				final String name = child.name.endsWith(".json") ? child.name.substring(0, child.name.length() - 5) : child.name;
+				result.add(new ResourceInfo(prefix + name, child.name, child.entry.getSize(), child.entry.getCrc(), false));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of files in the index
+	 *
+	 * @return The number of file entries
+	 */
+	int size() {
+		return size;
+	}
+}
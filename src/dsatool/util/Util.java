@@ -56,6 +56,8 @@ public class Util {
 
 	public static DecimalFormatSymbols decimalFormatSymbols = new DecimalFormatSymbols(Locale.GERMANY);
 
+	private static volatile String appDir;
+
 	public final static String javaExecutable = ProcessHandle.current().info().command().orElse("java");
 
 	private static Font labelFont = null;
@@ -153,14 +155,27 @@ public class Util {
 		return alert(exceptionText);
 	}
 
+	/**
+	 * Gets the directory the application is installed in
+	 *
+	 * The directory is resolved once, since resolving it requires canonicalizing a path. It can be overridden with the
+	 * system property dsatool.appDir, e.g. to run the benchmarks against generated data.
+	 *
+	 * @return The canonical path of the directory or null, if it could not be resolved
+	 */
 	public static String getAppDir() {
-		try {
-			final File directory = new File(Util.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParentFile();
-			return directory.getCanonicalPath();
-		} catch (final Exception e) {
-			e.printStackTrace();
-			return null;
+		if (appDir == null) {
+			try {
+				final String override = System.getProperty("dsatool.appDir");
+				final File directory = override != null ? new File(override)
+						: new File(Util.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParentFile();
+				appDir = directory.getCanonicalPath();
+			} catch (final Exception e) {
+				e.printStackTrace();
+				return null;
+			}
 		}
+		return appDir;
 	}
 
 	public static String getSignedDoubleString(final double d, final DecimalFormat format) {